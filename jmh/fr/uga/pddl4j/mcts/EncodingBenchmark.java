@@ -0,0 +1,73 @@
+package fr.uga.pddl4j.mcts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sat4j.specs.ContradictionException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark measures the encoding of the formula of a horizon, from the initial state to the goal. The clauses are
+ * sent to a sink that only counts them, so that the measure leaves the solvers out.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class EncodingBenchmark extends ProblemBenchmark {
+
+    /**
+     * The number of steps of the formula.
+     */
+    @Param({"5", "10", "20"})
+    public int horizon;
+
+    /**
+     * The encoder of the problem.
+     */
+    private PlanningEncoder encoder;
+
+    /**
+     * Instantiates and compiles the problem.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.prepare();
+        this.encoder = this.compile(this.instantiate());
+    }
+
+    /**
+     * Encodes the formula of the horizon.
+     *
+     * @return the sink that counted the clauses.
+     * @throws ContradictionException never, the sink not checking the clauses.
+     */
+    @Benchmark
+    public ClauseSink encoding() throws ContradictionException {
+        CountingClauseSink sink = new CountingClauseSink();
+        this.encoder.encodeInitialState(sink);
+        for (int s = 0; s < this.horizon; s++) {
+            this.encoder.encodeStep(sink, s);
+        }
+        this.encoder.encodeGoal(sink, this.horizon);
+        return sink;
+    }
+}
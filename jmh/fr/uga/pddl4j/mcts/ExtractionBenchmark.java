@@ -0,0 +1,101 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark measures the extraction of the plan from the model of the shortest satisfiable horizon, which is
+ * searched once at the start of the trial by a single solver extended step by step.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ExtractionBenchmark extends ProblemBenchmark {
+
+    /**
+     * The actions of the problem, in the order of the encoder.
+     */
+    private List<Action> actions;
+
+    /**
+     * The encoder of the problem.
+     */
+    private PlanningEncoder encoder;
+
+    /**
+     * The model of the shortest satisfiable horizon.
+     */
+    private int[] model;
+
+    /**
+     * The shortest satisfiable horizon.
+     */
+    private int horizon;
+
+    /**
+     * Instantiates and compiles the problem, then searches the shortest satisfiable horizon.
+     *
+     * @throws IOException if the files could not be read.
+     * @throws ContradictionException if the problem has no plan.
+     * @throws TimeoutException never, the solver having no timeout.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ContradictionException, TimeoutException {
+        this.prepare();
+        Problem pb = this.instantiate();
+        this.actions = pb.getActions();
+        this.encoder = this.compile(pb);
+        SolverPortfolio solver = new SolverPortfolio(Collections.singletonList(this.planner.getPortfolio().get(0)),
+                this.encoder);
+        try {
+            this.encoder.encodeInitialState(solver);
+            for (int h = 1; h <= this.planner.getMaxHorizon(); h++) {
+                this.encoder.encodeStep(solver, h - 1);
+                solver.setHorizon(h);
+                if (solver.isSatisfiable(this.encoder.getGoalAssumptions(h))) {
+                    this.model = solver.model();
+                    this.horizon = h;
+                    return;
+                }
+            }
+        } finally {
+            solver.close();
+        }
+        throw new IllegalStateException("No plan of " + this.problem + " was found within the search range");
+    }
+
+    /**
+     * Extracts the plan from the model.
+     *
+     * @return the plan.
+     */
+    @Benchmark
+    public Plan extraction() {
+        return this.planner.extract_plan(this.actions, this.encoder, this.model, this.horizon);
+    }
+}
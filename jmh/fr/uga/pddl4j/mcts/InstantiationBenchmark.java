@@ -0,0 +1,53 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.problem.Problem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark measures the parsing and the instantiation of a problem, which the planner runs once per problem.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class InstantiationBenchmark extends ProblemBenchmark {
+
+    /**
+     * Finds the files of the problem.
+     *
+     * @throws IOException if the generated problem could not be written.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.prepare();
+    }
+
+    /**
+     * Parses and instantiates the problem.
+     *
+     * @return the instantiated problem.
+     * @throws IOException if the files could not be read.
+     */
+    @Benchmark
+    public Problem instantiation() throws IOException {
+        return this.instantiate();
+    }
+}
@@ -0,0 +1,133 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.problem.Problem;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/**
+ * This class holds the problem measured by a benchmark and the planner measuring it. The problem is either the name of
+ * a problem of the resources directory, or a Depot problem generated at the start of the trial, named
+ * <code>depot-&lt;depots&gt;-&lt;distributors&gt;-&lt;trucks&gt;-&lt;pallets&gt;-&lt;hoists&gt;-&lt;crates&gt;</code>,
+ * always with the same seed so that every fork measures the same problem.
+ * <p>
+ * The planner is set up as in <code>SAT4JPlannerConfiguration</code>, and its printout is kept out of the measures.
+ * The benchmarks are run from the root directory of the project, where the resources directory is.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+@State(Scope.Benchmark)
+public abstract class ProblemBenchmark {
+
+    /**
+     * The prefix of the names of the generated Depot problems.
+     */
+    private static final String DEPOT_PREFIX = "depot-";
+
+    /**
+     * The seed of the generated Depot problems.
+     */
+    private static final long DEPOT_SEED = 1;
+
+    /**
+     * The name of the problem measured.
+     */
+    @Param({"p01", "p02", "p03", "depot-2-2-2-5-5-6"})
+    public String problem;
+
+    /**
+     * The planner whose settings are measured.
+     */
+    SAT4JPlanner planner;
+
+    /**
+     * The path of the domain file.
+     */
+    String domain_file;
+
+    /**
+     * The path of the problem file.
+     */
+    String problem_file;
+
+    /**
+     * Creates the planner and finds the files of the problem, generating it if it is a Depot problem.
+     *
+     * @throws IOException if the generated problem could not be written.
+     */
+    void prepare() throws IOException {
+        final String path_resources = new File("").getAbsolutePath() + File.separator + "resources" + File.separator;
+        this.domain_file = path_resources + "domain.pddl";
+        if (this.problem.startsWith(DEPOT_PREFIX)) {
+            String[] sizes = this.problem.substring(DEPOT_PREFIX.length()).split("-");
+            if (sizes.length != 6) {
+                throw new IllegalArgumentException("A Depot problem is named " + DEPOT_PREFIX
+                        + "<depots>-<distributors>-<trucks>-<pallets>-<hoists>-<crates>");
+            }
+            DepotGenerator generator = new DepotGenerator(Integer.parseInt(sizes[0]), Integer.parseInt(sizes[1]),
+                    Integer.parseInt(sizes[2]), Integer.parseInt(sizes[3]), Integer.parseInt(sizes[4]),
+                    Integer.parseInt(sizes[5]));
+            File file = Files.createTempFile(this.problem, ".pddl").toFile();
+            file.deleteOnExit();
+            generator.generate(file, DEPOT_SEED);
+            this.problem_file = file.getPath();
+        } else {
+            this.problem_file = path_resources + this.problem + ".pddl";
+        }
+
+        this.planner = new SAT4JPlanner();
+        // Keeps the parser and the instantiation quiet
+        this.planner.setLogLevel(LogLevel.OFF);
+        // Keeps the printout of the plans out of the measures
+        this.planner.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        // Selects the encoding of the action disjunctions
+        this.planner.setAtMostOneEncoding(AtMostOneEncoding.COMMANDER);
+        // Lets non-interfering actions share a step
+        this.planner.setStepSemantics(StepSemantics.EXISTS_STEP);
+        // Prunes the formulae with a relaxed planning graph
+        this.planner.setReachabilityPruning(true);
+        // Adds the fluent mutexes to every step
+        this.planner.setInvariants(true);
+    }
+
+    /**
+     * Parses and instantiates the problem.
+     *
+     * @return the instantiated problem.
+     * @throws IOException if the files could not be read.
+     */
+    Problem instantiate() throws IOException {
+        return this.planner.instantiate(this.planner.parse(this.domain_file, this.problem_file));
+    }
+
+    /**
+     * Compiles an instantiated problem into the encoder of its formulae, with the analyses the settings of the planner
+     * ask for.
+     *
+     * @param problem the instantiated problem.
+     * @return the encoder of the problem.
+     */
+    PlanningEncoder compile(Problem problem) {
+        CompiledProblem compiled = new CompiledProblem(problem);
+        ReachabilityAnalysis reachability = null;
+        if (this.planner.isReachabilityPruning()) {
+            reachability = new ReachabilityAnalysis(compiled);
+            if (reachability.getGoalLayer() == ReachabilityAnalysis.UNREACHABLE) {
+                throw new IllegalArgumentException("The goal of " + this.problem + " cannot be reached");
+            }
+        }
+        boolean multi_valued = this.planner.getStateEncoding() == StateEncoding.MULTI_VALUED;
+        MutexAnalysis mutexes = this.planner.isInvariants() || multi_valued ? new MutexAnalysis(compiled) : null;
+        MutexGroups groups = multi_valued ? new MutexGroups(compiled, mutexes) : null;
+        return new PlanningEncoder(compiled, this.planner.getAtMostOneEncoding(), this.planner.getStepSemantics(),
+                reachability, this.planner.isInvariants() ? mutexes : null, groups, this.planner.isLazy());
+    }
+}
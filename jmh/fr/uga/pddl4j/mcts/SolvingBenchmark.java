@@ -0,0 +1,117 @@
+package fr.uga.pddl4j.mcts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This benchmark measures the solving of the formula of a horizon by the first solver configuration of the portfolio,
+ * on the calling thread. Since a solver keeps what it learned, each call is given a new solver holding the formula,
+ * built before the call and outside the measured time. The allocations reported by the GC profiler still include
+ * those of building the solver, which runs on the same thread.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SolvingBenchmark extends ProblemBenchmark {
+
+    /**
+     * The time a call is allowed to take before the benchmark fails, in milliseconds.
+     */
+    private static final long TIMEOUT = 60000;
+
+    /**
+     * The number of steps of the formula.
+     */
+    @Param({"4", "8", "12"})
+    public int horizon;
+
+    /**
+     * The encoder of the problem.
+     */
+    private PlanningEncoder encoder;
+
+    /**
+     * The solver holding the formula of the next call.
+     */
+    private SolverPortfolio solver;
+
+    /**
+     * Whether the formula of the horizon was found to be unsatisfiable while it was encoded.
+     */
+    private boolean contradictory;
+
+    /**
+     * Instantiates and compiles the problem.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.prepare();
+        this.encoder = this.compile(this.instantiate());
+    }
+
+    /**
+     * Sends the formula of the horizon to a new solver.
+     */
+    @Setup(Level.Invocation)
+    public void encode() {
+        this.solver = new SolverPortfolio(Collections.singletonList(this.planner.getPortfolio().get(0)), this.encoder);
+        this.solver.setTimeoutMs(TIMEOUT);
+        try {
+            this.encoder.encodeInitialState(this.solver);
+            for (int s = 0; s < this.horizon; s++) {
+                this.encoder.encodeStep(this.solver, s);
+            }
+            this.encoder.encodeGoal(this.solver, this.horizon);
+            this.solver.setHorizon(this.horizon);
+            this.contradictory = false;
+        } catch (ContradictionException e) {
+            // The formula of a short horizon can be contradictory as soon as it is built.
+            this.contradictory = true;
+        }
+    }
+
+    /**
+     * Solves the formula of the horizon.
+     *
+     * @return whether the formula is satisfiable.
+     * @throws TimeoutException if the solver reached its timeout.
+     */
+    @Benchmark
+    public boolean solving() throws TimeoutException {
+        return !this.contradictory && this.solver.isSatisfiable(VecInt.EMPTY);
+    }
+
+    /**
+     * Closes the solver of the call.
+     */
+    @TearDown(Level.Invocation)
+    public void close() {
+        this.solver.close();
+    }
+}
@@ -0,0 +1,198 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * This enumeration lists the ways the planner can state that at most one of a set of literals is true, which is how it
+ * forbids two actions from being taken at the same step.
+ * <p>
+ * Some encodings need auxiliary variables. Their number only depends on the number of literals, so that the encoder can
+ * reserve them at a fixed position within each step.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum AtMostOneEncoding {
+
+    /**
+     * One binary clause for every pair of literals. No auxiliary variable, but a quadratic number of clauses.
+     */
+    PAIRWISE {
+        @Override
+        public int getAuxiliaryVariables(int size) {
+            return 0;
+        }
+
+        @Override
+        public void encode(ClauseSink sink, int[] literals, int first_auxiliary) throws ContradictionException {
+            IVecInt clause = new VecInt(2);
+            pairwise(sink, clause, literals, 0, literals.length);
+        }
+    },
+
+    /**
+     * The sequential counter of C. Sinz (also known as the ladder encoding): an auxiliary variable per literal records
+     * whether one of the literals up to it is true. About 3n clauses and n auxiliary variables.
+     */
+    SEQUENTIAL {
+        @Override
+        public int getAuxiliaryVariables(int size) {
+            return Math.max(size - 1, 0);
+        }
+
+        @Override
+        public void encode(ClauseSink sink, int[] literals, int first_auxiliary) throws ContradictionException {
+            int n = literals.length;
+            if (n < 2) {
+                return;
+            }
+            IVecInt clause = new VecInt(2);
+            binary(sink, clause, -literals[0], first_auxiliary);
+            for (int i = 1; i < n - 1; i++) {
+                int counter = first_auxiliary + i;
+                binary(sink, clause, -literals[i], counter);
+                binary(sink, clause, -(counter - 1), counter);
+                binary(sink, clause, -literals[i], -(counter - 1));
+            }
+            binary(sink, clause, -literals[n - 1], -(first_auxiliary + n - 2));
+        }
+    },
+
+    /**
+     * The product encoding of J. Chen: the literals are laid out on a grid of about sqrt(n) rows and columns, each
+     * literal implies its row and its column, and at most one row and one column can be selected. About 2n clauses and
+     * 2 sqrt(n) auxiliary variables.
+     */
+    PRODUCT {
+        @Override
+        public int getAuxiliaryVariables(int size) {
+            if (size < 2) {
+                return 0;
+            }
+            int rows = (int) Math.ceil(Math.sqrt(size));
+            return rows + (size + rows - 1) / rows;
+        }
+
+        @Override
+        public void encode(ClauseSink sink, int[] literals, int first_auxiliary) throws ContradictionException {
+            int n = literals.length;
+            if (n < 2) {
+                return;
+            }
+            IVecInt clause = new VecInt(2);
+            int rows = (int) Math.ceil(Math.sqrt(n));
+            int columns = (n + rows - 1) / rows;
+            int[] row_literals = new int[rows];
+            int[] column_literals = new int[columns];
+            for (int r = 0; r < rows; r++) {
+                row_literals[r] = first_auxiliary + r;
+            }
+            for (int c = 0; c < columns; c++) {
+                column_literals[c] = first_auxiliary + rows + c;
+            }
+            for (int i = 0; i < n; i++) {
+                binary(sink, clause, -literals[i], row_literals[i % rows]);
+                binary(sink, clause, -literals[i], column_literals[i / rows]);
+            }
+            pairwise(sink, clause, row_literals, 0, rows);
+            pairwise(sink, clause, column_literals, 0, columns);
+        }
+    },
+
+    /**
+     * The commander encoding of W. Klieber and G. Kwon: the literals are split into groups of three, each with a
+     * commander variable implied by its literals, and the commanders are constrained recursively. About 3n clauses and
+     * n / 2 auxiliary variables.
+     */
+    COMMANDER {
+
+        /**
+         * The number of literals under each commander.
+         */
+        private static final int GROUP_SIZE = 3;
+
+        @Override
+        public int getAuxiliaryVariables(int size) {
+            if (size <= GROUP_SIZE) {
+                return 0;
+            }
+            int commanders = (size + GROUP_SIZE - 1) / GROUP_SIZE;
+            return commanders + this.getAuxiliaryVariables(commanders);
+        }
+
+        @Override
+        public void encode(ClauseSink sink, int[] literals, int first_auxiliary) throws ContradictionException {
+            IVecInt clause = new VecInt(2);
+            int n = literals.length;
+            if (n <= GROUP_SIZE) {
+                pairwise(sink, clause, literals, 0, n);
+                return;
+            }
+            int[] commanders = new int[(n + GROUP_SIZE - 1) / GROUP_SIZE];
+            for (int c = 0; c < commanders.length; c++) {
+                commanders[c] = first_auxiliary + c;
+                int end = Math.min(n, (c + 1) * GROUP_SIZE);
+                pairwise(sink, clause, literals, c * GROUP_SIZE, end);
+                for (int i = c * GROUP_SIZE; i < end; i++) {
+                    binary(sink, clause, -literals[i], commanders[c]);
+                }
+            }
+            this.encode(sink, commanders, first_auxiliary + commanders.length);
+        }
+    },
+
+    /**
+     * A single native cardinality constraint of SAT4J, added with {@code addAtMost}. No auxiliary variable and a single
+     * constraint, but sinks that cannot store cardinality constraints fall back to the pairwise encoding.
+     */
+    CARDINALITY {
+        @Override
+        public int getAuxiliaryVariables(int size) {
+            return 0;
+        }
+
+        @Override
+        public void encode(ClauseSink sink, int[] literals, int first_auxiliary) throws ContradictionException {
+            if (literals.length > 1) {
+                sink.addAtMost(new VecInt(literals), 1);
+            }
+        }
+    };
+
+    /**
+     * Returns the number of auxiliary variables needed to constrain the given number of literals.
+     *
+     * @param size the number of literals.
+     * @return the number of auxiliary variables.
+     */
+    public abstract int getAuxiliaryVariables(int size);
+
+    /**
+     * Sends the constraints stating that at most one of the literals is true to the sink.
+     *
+     * @param sink the sink receiving the constraints.
+     * @param literals the literals to constrain.
+     * @param first_auxiliary the first of the auxiliary variables reserved for these literals.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    public abstract void encode(ClauseSink sink, int[] literals, int first_auxiliary) throws ContradictionException;
+
+    private static void pairwise(ClauseSink sink, IVecInt clause, int[] literals, int from, int to)
+            throws ContradictionException {
+        for (int i = from; i < to; i++) {
+            for (int j = i + 1; j < to; j++) {
+                binary(sink, clause, -literals[i], -literals[j]);
+            }
+        }
+    }
+
+    private static void binary(ClauseSink sink, IVecInt clause, int literal1, int literal2)
+            throws ContradictionException {
+        clause.clear();
+        clause.push(literal1);
+        clause.push(literal2);
+        sink.addClause(clause);
+    }
+}
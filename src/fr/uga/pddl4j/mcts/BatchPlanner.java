@@ -0,0 +1,686 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.parser.DefaultParsedProblem;
+import fr.uga.pddl4j.parser.Message;
+import fr.uga.pddl4j.parser.ParsedDomain;
+import fr.uga.pddl4j.parser.ParsedProblem;
+import fr.uga.pddl4j.parser.Parser;
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.InvalidConfigurationException;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.problem.Problem;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * This class solves many problems of the same domain in a single JVM, so that the cost of starting the JVM and of
+ * warming up the parser, the instantiation and the solvers is only paid once.
+ * <p>
+ * The problems are solved concurrently by a bounded pool of workers. Each worker parses the domain once and reuses it
+ * for every problem it parses, and each problem is solved by a fresh planner, whose printout is kept quiet so that the
+ * problems don't mix their output. From the command line, the planners take the same options as
+ * <code>SAT4JPlanner</code>, so that a problem is solved in the batch as it is on its own. Once a problem is solved, a summary line gives its status, the length of its plan
+ * and the time spent in each phase.
+ * <p>
+ * The problems can be given as files or directories, read one path per line from a stream, or sent the same way to a
+ * local socket, the summary of each problem being written back to the connection that sent it.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class BatchPlanner implements Closeable {
+
+    /**
+     * The class logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger(BatchPlanner.class.getName());
+
+    /**
+     * The possible outcomes of a problem.
+     */
+    public enum Status {
+
+        /**
+         * A plan was found.
+         */
+        SOLVED,
+
+        /**
+         * No plan was found within the timeout and the search range of the planner.
+         */
+        NO_PLAN,
+
+        /**
+         * The problem could not be parsed or the planner failed on it.
+         */
+        ERROR
+    }
+
+    /**
+     * The number of tasks waiting for a worker, per worker, before the callers run the tasks themselves.
+     */
+    private static final int QUEUE_PER_WORKER = 4;
+
+    /**
+     * The domain file shared by all the problems.
+     */
+    private final File domain;
+
+    /**
+     * The source of the planners, one planner being created for each problem.
+     */
+    private final Supplier<SAT4JPlanner> planners;
+
+    /**
+     * The directory the plans found are written to, or null if the plans are not written.
+     */
+    private final File plan_directory;
+
+    /**
+     * The parser of each thread, that parsed the domain once and parses the problems of this thread against it.
+     */
+    private final ThreadLocal<Parser> parsers = new ThreadLocal<>();
+
+    /**
+     * The domain parsed by the parser of each thread.
+     */
+    private final ThreadLocal<ParsedDomain> parsed_domains = new ThreadLocal<>();
+
+    /**
+     * The workers solving the problems.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a batch planner for the problems of a domain. The domain is parsed once here, so that an invalid domain
+     * is reported before any problem is submitted.
+     *
+     * @param domain the domain file shared by all the problems.
+     * @param jobs the number of problems solved at the same time.
+     * @param planners the source of the planners, called once for each problem.
+     * @param plan_directory the directory the plans found are written to, or null if the plans are not written.
+     * @throws IOException if the domain could not be read or parsed.
+     */
+    public BatchPlanner(File domain, int jobs, Supplier<SAT4JPlanner> planners, File plan_directory)
+            throws IOException {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("At least one job is needed");
+        }
+        this.domain = domain;
+        this.planners = planners;
+        this.plan_directory = plan_directory;
+        this.parsed_domain();
+
+        AtomicInteger worker_count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(jobs, jobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(jobs * QUEUE_PER_WORKER), task -> {
+                    Thread worker = new Thread(task, "batch-planner-" + worker_count.incrementAndGet());
+                    worker.setDaemon(true);
+                    return worker;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Submits a problem to the workers. When all the workers are busy and their queue is full, the problem is solved
+     * by the calling thread, which slows the submission down to the pace of the workers.
+     *
+     * @param problem the problem file.
+     * @return the result of the problem, once it is solved.
+     */
+    public CompletableFuture<Result> submit(File problem) {
+        return CompletableFuture.supplyAsync(() -> this.run(problem), this.executor);
+    }
+
+    /**
+     * Solves a list of problems concurrently.
+     *
+     * @param problems the problem files.
+     * @return the results of the problems, in the order of the list.
+     */
+    public List<Result> solveAll(List<File> problems) {
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (File problem : problems) {
+            futures.add(this.submit(problem));
+        }
+        List<Result> results = new ArrayList<>();
+        for (CompletableFuture<Result> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Reads the path of a problem on each line of a stream and solves the problems concurrently until the stream ends.
+     * The summary of each problem is printed as soon as it is solved, so the summaries come in the order the problems
+     * are solved. Empty lines are ignored.
+     *
+     * @param in the stream of problem paths.
+     * @param out the stream the summaries are printed to.
+     * @throws IOException if the stream could not be read.
+     */
+    public void serve(BufferedReader in, PrintWriter out) throws IOException {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            pending.removeIf(CompletableFuture::isDone);
+            pending.add(this.submit(new File(line)).thenAccept(result -> {
+                synchronized (out) {
+                    out.println(result);
+                    out.flush();
+                }
+            }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Listens for connections on a port of the loopback address, and serves each connection as a stream of problem
+     * paths, writing the summaries back to it. This method only returns if the server socket fails.
+     *
+     * @param port the port to listen on.
+     * @throws IOException if the port could not be opened.
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket connection = server.accept();
+                Thread handler = new Thread(() -> this.handle(connection), "batch-connection-" + connection.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the workers once the submitted problems are solved.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Serves one connection of the server until the client closes its side.
+     *
+     * @param connection the connection to serve.
+     */
+    private void handle(Socket connection) {
+        try (Socket socket = connection;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                     StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            this.serve(in, out);
+        } catch (IOException e) {
+            LOGGER.error("The connection from port {} failed: {}", connection.getPort(), e.getMessage());
+        }
+    }
+
+    /**
+     * Parses, instantiates and solves a problem, and writes its plan if a plan directory was given.
+     *
+     * @param problem the problem file.
+     * @return the result of the problem.
+     */
+    private Result run(File problem) {
+        Result result = new Result(problem);
+        try {
+            long start = System.nanoTime();
+            Parser parser = this.parser();
+            parser.getErrorManager().clear();
+            ParsedProblem parsed = parser.parseProblem(problem);
+            if (parsed == null || !parser.getErrorManager().getMessages(Message.Type.PARSER_ERROR).isEmpty()
+                    || !parser.getErrorManager().getMessages(Message.Type.LEXICAL_ERROR).isEmpty()) {
+                return result.failed("the problem could not be parsed");
+            }
+            DefaultParsedProblem parsed_problem = new DefaultParsedProblem(this.parsed_domain(), parsed);
+            result.parse_time = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            SAT4JPlanner planner = this.planners.get();
+            // The problems solved at the same time share the heap, so it says nothing about a single search.
+            planner.setHeapMeasured(false);
+            Problem instantiated = planner.instantiate(parsed_problem);
+            result.instantiate_time = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Plan plan = planner.solve(instantiated);
+            result.solve_time = System.nanoTime() - start;
+
+            if (plan == null) {
+                result.status = Status.NO_PLAN;
+                return result;
+            }
+            result.status = Status.SOLVED;
+            result.plan_length = plan.size();
+            if (this.plan_directory != null) {
+                File file = new File(this.plan_directory, result.name + ".plan");
+                try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+                    out.print(instantiated.toString(plan));
+                }
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            return result.failed(e.toString());
+        }
+    }
+
+    /**
+     * Returns the parser of the current thread, parsing the domain with it the first time.
+     *
+     * @return the parser.
+     * @throws IOException if the domain could not be read or parsed.
+     */
+    private Parser parser() throws IOException {
+        Parser parser = this.parsers.get();
+        if (parser == null) {
+            parser = new Parser();
+            parser.setLogLevel(LogLevel.ERROR);
+            ParsedDomain parsed = parser.parseDomain(this.domain);
+            if (parsed == null || !parser.getErrorManager().isEmpty()) {
+                throw new IOException("The domain " + this.domain + " could not be parsed");
+            }
+            this.parsers.set(parser);
+            this.parsed_domains.set(parsed);
+        }
+        return parser;
+    }
+
+    /**
+     * Returns the domain parsed by the parser of the current thread.
+     *
+     * @return the parsed domain.
+     * @throws IOException if the domain could not be read or parsed.
+     */
+    private ParsedDomain parsed_domain() throws IOException {
+        this.parser();
+        return this.parsed_domains.get();
+    }
+
+    /**
+     * The outcome of a problem and the time spent in each phase.
+     */
+    public static final class Result {
+
+        /**
+         * The header of the summary lines.
+         */
+        public static final String HEADER = String.format(Locale.ROOT, "%-20s %-8s %6s %12s %12s %12s", "problem",
+                "status", "length", "parse (ms)", "inst. (ms)", "solve (ms)");
+
+        /**
+         * The name of the problem, taken from its file.
+         */
+        private final String name;
+
+        /**
+         * The outcome of the problem.
+         */
+        private Status status = Status.ERROR;
+
+        /**
+         * The number of actions of the plan found, or 0 if no plan was found.
+         */
+        private int plan_length = 0;
+
+        /**
+         * The time spent parsing the problem, in nanoseconds.
+         */
+        private long parse_time = 0;
+
+        /**
+         * The time spent instantiating the problem, in nanoseconds.
+         */
+        private long instantiate_time = 0;
+
+        /**
+         * The time spent searching a plan, in nanoseconds.
+         */
+        private long solve_time = 0;
+
+        /**
+         * The reason of the failure, or null if the planner didn't fail.
+         */
+        private String error = null;
+
+        /**
+         * Creates the result of a problem that was not solved yet.
+         *
+         * @param problem the problem file.
+         */
+        private Result(File problem) {
+            String file_name = problem.getName();
+            this.name = file_name.endsWith(".pddl") ? file_name.substring(0, file_name.length() - 5) : file_name;
+        }
+
+        /**
+         * Marks the problem as failed.
+         *
+         * @param error the reason of the failure.
+         * @return this result.
+         */
+        private Result failed(String error) {
+            this.status = Status.ERROR;
+            this.error = error;
+            return this;
+        }
+
+        /**
+         * Returns the name of the problem, taken from its file.
+         *
+         * @return the name of the problem.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the outcome of the problem.
+         *
+         * @return the status.
+         */
+        public Status getStatus() {
+            return this.status;
+        }
+
+        /**
+         * Returns the number of actions of the plan found.
+         *
+         * @return the length of the plan, or 0 if no plan was found.
+         */
+        public int getPlanLength() {
+            return this.plan_length;
+        }
+
+        /**
+         * Returns the time spent parsing the problem.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getParseTime() {
+            return this.parse_time;
+        }
+
+        /**
+         * Returns the time spent instantiating the problem.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getInstantiateTime() {
+            return this.instantiate_time;
+        }
+
+        /**
+         * Returns the time spent searching a plan.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getSolveTime() {
+            return this.solve_time;
+        }
+
+        /**
+         * Returns the reason of the failure.
+         *
+         * @return the reason, or null if the planner didn't fail.
+         */
+        public String getError() {
+            return this.error;
+        }
+
+        /**
+         * Returns the summary line of the problem, with the columns of {@link #HEADER}.
+         *
+         * @return the summary line.
+         */
+        @Override
+        public String toString() {
+            String summary = String.format(Locale.ROOT, "%-20s %-8s %6d %12.1f %12.1f %12.1f", this.name, this.status,
+                    this.plan_length, this.parse_time / 1e6, this.instantiate_time / 1e6, this.solve_time / 1e6);
+            return this.error == null ? summary : summary + " " + this.error;
+        }
+    }
+
+    /**
+     * Creates a planner with the settings of a template planner, parsed from the same options as
+     * <code>SAT4JPlanner</code>, so that a problem is solved in the batch as it is on its own. The printout of the
+     * search is kept quiet, only the summaries being printed.
+     *
+     * @param template the planner whose settings are copied.
+     * @param log_level the level of trace parsed with the settings of the template.
+     * @return the planner.
+     */
+    private static SAT4JPlanner create_planner(SAT4JPlanner template, LogLevel log_level) {
+        SAT4JPlanner planner = new SAT4JPlanner();
+        planner.setTimeout(template.getTimeout());
+        planner.setLogLevel(log_level);
+        planner.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        planner.setIncremental(template.isIncremental());
+        planner.setAtMostOneEncoding(template.getAtMostOneEncoding());
+        planner.setStepSemantics(template.getStepSemantics());
+        planner.setLazy(template.isLazy());
+        planner.setStateEncoding(template.getStateEncoding());
+        planner.setReachabilityPruning(template.isReachabilityPruning());
+        planner.setInvariants(template.isInvariants());
+        planner.setHorizonScheduling(template.getHorizonScheduling());
+        planner.setThreads(template.getThreads());
+        planner.setHorizonWindow(template.getHorizonWindow());
+        planner.setHorizonStrategy(template.getHorizonStrategy());
+        planner.setHorizonStep(template.getHorizonStep());
+        planner.setMaxHorizon(template.getMaxHorizon());
+        planner.setPortfolio(template.getPortfolio());
+        planner.setCubeDepth(template.getCubeDepth());
+        return planner;
+    }
+
+    /**
+     * The options of the batch itself. The options of <code>SAT4JPlanner</code> are added to its command line by
+     * {@link #command_line(Options, SAT4JPlanner)}.
+     */
+    @CommandLine.Command(name = "BatchPlanner",
+            description = "Solves many problems of the same domain concurrently in a single JVM. The planner options "
+                    + "are those of SAT4JPlanner, applied to every problem, except the ones that write files or print "
+                    + "the plan, and the log level is preset to ERROR.",
+            sortOptions = false,
+            mixinStandardHelpOptions = true,
+            headerHeading = "Usage:%n",
+            synopsisHeading = "%n",
+            descriptionHeading = "%nDescription:%n%n",
+            parameterListHeading = "%nParameters:%n",
+            optionListHeading = "%nOptions:%n")
+    private static final class Options {
+
+        /**
+         * The domain file shared by all the problems.
+         */
+        @CommandLine.Parameters(index = "0", paramLabel = "<domain>", description = "The domain file.")
+        private File domain;
+
+        /**
+         * The problem files or directories, and - for the standard input.
+         */
+        @CommandLine.Parameters(index = "1..*", paramLabel = "<problem>",
+                description = "The problem files or directories, or - to read the problem paths from the standard "
+                        + "input (preset the standard input).")
+        private List<String> problems = new ArrayList<>();
+
+        /**
+         * The number of problems solved at the same time.
+         */
+        @CommandLine.Option(names = {"-j", "--jobs"}, paramLabel = "<integer>",
+                description = "Set the number of problems solved at the same time (preset the number of processors).")
+        private int jobs = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * The directory the plans found are written to, or null.
+         */
+        @CommandLine.Option(names = {"-o", "--plans"}, paramLabel = "<directory>",
+                description = "Write the plans found to a directory (preset none).")
+        private File plan_directory = null;
+
+        /**
+         * The port of the loopback address the problems are served on, or -1.
+         */
+        @CommandLine.Option(names = {"-p", "--port"}, paramLabel = "<port>",
+                description = "Serve the problems on a port of the loopback address (preset none).")
+        private int port = -1;
+    }
+
+    /**
+     * The long names of the options of <code>SAT4JPlanner</code> that don't apply to a batch: the files written by a
+     * search would be overwritten by every problem, the cache is only used for problems parsed by the planner itself,
+     * and the printout of each search is kept quiet.
+     */
+    private static final List<String> PLANNER_ONLY_OPTIONS = Arrays.asList("--cnf", "--metrics", "--cache",
+            "--cache-limit", "--verbose", "--help", "--version");
+
+    /**
+     * Creates the command line of the batch: its own options, and the options of <code>SAT4JPlanner</code> that apply
+     * to a batch, which set the template planner.
+     *
+     * @param options the options of the batch.
+     * @param template the planner whose settings are copied for every problem.
+     * @return the command line.
+     */
+    private static CommandLine command_line(Options options, SAT4JPlanner template) {
+        CommandLine command_line = new CommandLine(options);
+        CommandLine.Model.CommandSpec planner_spec = new CommandLine(template).getCommandSpec();
+        for (CommandLine.Model.OptionSpec option : planner_spec.options()) {
+            if (PLANNER_ONLY_OPTIONS.contains(option.longestName())) {
+                continue;
+            }
+            CommandLine.Model.OptionSpec.Builder copy = CommandLine.Model.OptionSpec.builder(option);
+            if (option.longestName().equals("--log")) {
+                // The problems solved at the same time would mix their traces.
+                copy.defaultValue("ERROR").description("Set the level of trace of the planners: ALL, DEBUG, INFO, "
+                        + "ERROR, FATAL, OFF, TRACE (preset ERROR).");
+            }
+            command_line.getCommandSpec().addOption(copy.build());
+        }
+        return command_line;
+    }
+
+    /**
+     * The main method of the class. The options are those of the batch, <code>-j</code> for the number of problems
+     * solved at the same time, <code>-o</code> to write the plans found and <code>-p</code> to serve the problems on a
+     * local socket, and those of <code>SAT4JPlanner</code> that apply to every problem, such as <code>-t</code> for the
+     * timeout of each problem. The problems are given after the domain as files or directories. Without any problem,
+     * or with <code>-</code>, the problem paths are read from the standard input. With <code>-h</code>, all the options
+     * are listed.
+     *
+     * @param args the arguments of the command line.
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+        SAT4JPlanner template = new SAT4JPlanner();
+        CommandLine command_line = command_line(options, template);
+        try {
+            command_line.parseArgs(args);
+        } catch (CommandLine.PicocliException e) {
+            System.out.println(e.getMessage());
+            command_line.usage(System.out);
+            return;
+        }
+        if (command_line.isUsageHelpRequested()) {
+            command_line.usage(System.out);
+            return;
+        }
+        if (command_line.isVersionHelpRequested()) {
+            command_line.printVersionHelp(System.out);
+            return;
+        }
+        // The level of trace is shared by all the loggers and set back to its default by every new planner, so it is
+        // read once here and set again on each planner.
+        final LogLevel log_level = template.getLogLevel();
+        if (options.jobs < 1) {
+            System.out.println("At least one job is needed.");
+            command_line.usage(System.out);
+            return;
+        }
+        // The settings are checked on the domain alone, the problems being only known once they are solved.
+        template.setDomain(options.domain.getPath());
+        template.setProblem(options.domain.getPath());
+        if (!template.hasValidConfiguration()) {
+            try {
+                template.throwInvalidConfigurationException();
+            } catch (InvalidConfigurationException e) {
+                System.out.println(e.getMessage());
+            }
+            command_line.usage(System.out);
+            return;
+        }
+
+        List<File> problems = new ArrayList<>();
+        boolean from_input = false;
+        for (String argument : options.problems) {
+            if (argument.equals("-")) {
+                from_input = true;
+                continue;
+            }
+            File file = new File(argument);
+            File[] children = file.listFiles((directory, name) -> name.endsWith(".pddl"));
+            if (children == null) {
+                problems.add(file);
+            } else {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (!child.getAbsoluteFile().equals(options.domain.getAbsoluteFile())) {
+                        problems.add(child);
+                    }
+                }
+            }
+        }
+        if (options.plan_directory != null) {
+            options.plan_directory.mkdirs();
+        }
+
+        try (BatchPlanner batch = new BatchPlanner(options.domain, options.jobs, () -> create_planner(template, log_level),
+                options.plan_directory)) {
+            if (options.port >= 0) {
+                System.out.println("Listening on port " + options.port + " of the loopback address.");
+                batch.listen(options.port);
+            } else if (from_input || problems.isEmpty()) {
+                PrintWriter out = new PrintWriter(System.out, true);
+                out.println(Result.HEADER);
+                batch.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out);
+            } else {
+                System.out.println(Result.HEADER);
+                long start = System.nanoTime();
+                for (Result result : batch.solveAll(problems)) {
+                    System.out.println(result);
+                }
+                System.out.printf(Locale.ROOT, "%d problems in %.1f s%n", problems.size(),
+                        (System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This enumeration lists the kinds of constraints a planning formula is made of, so that the size of each part of the
+ * formula can be measured.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum ClauseCategory {
+
+    /**
+     * The unit clauses describing the initial state.
+     */
+    INITIAL_STATE,
+
+    /**
+     * The unit clauses describing the goal at the last step.
+     */
+    GOAL,
+
+    /**
+     * The preconditions and effects of the actions, and the actions fixed to false by reachability.
+     */
+    ACTION,
+
+    /**
+     * The state transitions stating that a fluent only changes through an action, and the fluents fixed by
+     * reachability.
+     */
+    FRAME,
+
+    /**
+     * The constraints between the actions that cannot be taken at the same step.
+     */
+    MUTEX,
+
+    /**
+     * The redundant binary clauses stating that two fluents are never true together in a reachable state, and the
+     * constraints stating that exactly one fluent of each group is true.
+     */
+    INVARIANT
+}
@@ -0,0 +1,82 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVecInt;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This interface describes a destination for the clauses of a planning formula. The encoder writes every clause to a
+ * sink as soon as it is built, so that the whole formula never has to be held in memory as text.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public interface ClauseSink extends Closeable {
+
+    /**
+     * Makes sure that the sink knows about all the variables up to the given one.
+     *
+     * @param count the highest variable the formula uses so far.
+     */
+    void addVariables(int count);
+
+    /**
+     * Tells the sink which kind of constraints the next ones are, until the next call. Sinks that do not measure the
+     * formula do not need to override this method.
+     *
+     * @param category the category of the next constraints.
+     */
+    default void setCategory(ClauseCategory category) {
+    }
+
+    /**
+     * Adds a clause to the sink. The literals are read during the call only, so the vector can be reused afterwards.
+     *
+     * @param literals the literals of the clause, in DIMACS notation.
+     * @throws ContradictionException if the sink detects that the formula became trivially unsatisfiable.
+     */
+    void addClause(IVecInt literals) throws ContradictionException;
+
+    /**
+     * Adds a cardinality constraint stating that at most a given number of the literals are true. The literals are read
+     * during the call only, so the vector can be reused afterwards.
+     *
+     * @param literals the literals of the constraint, in DIMACS notation.
+     * @param degree the maximum number of true literals.
+     * @throws ContradictionException if the sink detects that the formula became trivially unsatisfiable.
+     */
+    void addAtMost(IVecInt literals, int degree) throws ContradictionException;
+
+    /**
+     * Returns the highest variable sent to the sink.
+     *
+     * @return the number of variables of the formula.
+     */
+    int getVariableCount();
+
+    /**
+     * Returns the number of clauses and cardinality constraints sent to the sink.
+     *
+     * @return the number of constraints of the formula.
+     */
+    int getClauseCount();
+
+    /**
+     * Returns the number of clauses and cardinality constraints of a given category sent to the sink.
+     *
+     * @param category the category of the constraints.
+     * @return the number of constraints of the category.
+     */
+    int getClauseCount(ClauseCategory category);
+
+    /**
+     * Releases the resources held by the sink. Sinks that hold none do not need to override this method.
+     *
+     * @throws IOException if the formula could not be flushed.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
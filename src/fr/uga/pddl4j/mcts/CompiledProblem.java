@@ -0,0 +1,266 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.AbstractFluentDescription;
+import fr.uga.pddl4j.problem.operator.Action;
+import fr.uga.pddl4j.util.BitSet;
+
+import java.util.List;
+
+/**
+ * This class holds a grounded planning problem as plain integer arrays, computed once so that the encoder never has to
+ * go through the PDDL4J structures again.
+ * <p>
+ * Fluents are referred to by signed positions starting at 1: a positive value for a fluent that must be (or becomes)
+ * true, a negative one for a fluent that must be (or becomes) false. Actions and fluents in the inverted indexes are
+ * referred to by their positions in the action and fluent lists, starting at 0. The arrays returned by the getters are
+ * shared and must not be modified.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class CompiledProblem {
+
+    /**
+     * The number of fluents of the problem.
+     */
+    private final int fluent_count;
+
+    /**
+     * The preconditions of each action.
+     */
+    private final int[][] preconditions;
+
+    /**
+     * The effects of each action.
+     */
+    private final int[][] effects;
+
+    /**
+     * The actions that have each fluent as a positive effect.
+     */
+    private final int[][] adders;
+
+    /**
+     * The actions that have each fluent as a negative effect.
+     */
+    private final int[][] deleters;
+
+    /**
+     * The actions that have each fluent as a positive precondition.
+     */
+    private final int[][] requirers_pos;
+
+    /**
+     * The actions that have each fluent as a negative precondition.
+     */
+    private final int[][] requirers_neg;
+
+    /**
+     * The value of each fluent in the initial state.
+     */
+    private final boolean[] initial_state;
+
+    /**
+     * The fluents of the goal.
+     */
+    private final int[] goal;
+
+    /**
+     * Compiles the given problem.
+     *
+     * @param problem the grounded problem to compile.
+     */
+    public CompiledProblem(Problem problem) {
+        List<Action> actions = problem.getActions();
+        this.fluent_count = problem.getFluents().size();
+        this.preconditions = new int[actions.size()][];
+        this.effects = new int[actions.size()][];
+        for (int a = 0; a < actions.size(); a++) {
+            this.preconditions[a] = get_fluents(actions.get(a).getPrecondition());
+            this.effects[a] = get_fluents(actions.get(a).getUnconditionalEffect());
+        }
+        this.initial_state = new boolean[this.fluent_count];
+        BitSet init = problem.getInitialState().getPositiveFluents();
+        for (int f = init.nextSetBit(0); f >= 0; f = init.nextSetBit(f + 1)) {
+            this.initial_state[f] = true;
+        }
+        this.goal = get_fluents(problem.getGoal());
+        this.adders = this.invert(this.effects, true);
+        this.deleters = this.invert(this.effects, false);
+        this.requirers_pos = this.invert(this.preconditions, true);
+        this.requirers_neg = this.invert(this.preconditions, false);
+    }
+
+    /**
+     * Creates a compiled problem from its tables, as read back from an {@link EncodingCache}. The inverted indexes are
+     * rebuilt from the preconditions and effects.
+     *
+     * @param fluent_count the number of fluents of the problem.
+     * @param preconditions the preconditions of each action.
+     * @param effects the effects of each action.
+     * @param initial_state the value of each fluent in the initial state.
+     * @param goal the fluents of the goal.
+     */
+    CompiledProblem(int fluent_count, int[][] preconditions, int[][] effects, boolean[] initial_state, int[] goal) {
+        this.fluent_count = fluent_count;
+        this.preconditions = preconditions;
+        this.effects = effects;
+        this.initial_state = initial_state;
+        this.goal = goal;
+        this.adders = this.invert(this.effects, true);
+        this.deleters = this.invert(this.effects, false);
+        this.requirers_pos = this.invert(this.preconditions, true);
+        this.requirers_neg = this.invert(this.preconditions, false);
+    }
+
+    /**
+     * Returns the number of fluents of the problem.
+     *
+     * @return the number of fluents.
+     */
+    public int getFluentCount() {
+        return this.fluent_count;
+    }
+
+    /**
+     * Returns the number of actions of the problem.
+     *
+     * @return the number of actions.
+     */
+    public int getActionCount() {
+        return this.preconditions.length;
+    }
+
+    /**
+     * Returns the preconditions of an action.
+     *
+     * @param action the position of the action.
+     * @return the signed positions of the fluents of the precondition.
+     */
+    public int[] getPreconditions(int action) {
+        return this.preconditions[action];
+    }
+
+    /**
+     * Returns the effects of an action.
+     *
+     * @param action the position of the action.
+     * @return the signed positions of the fluents of the effect.
+     */
+    public int[] getEffects(int action) {
+        return this.effects[action];
+    }
+
+    /**
+     * Returns the actions that make a fluent true.
+     *
+     * @param fluent the position of the fluent.
+     * @return the positions of the actions.
+     */
+    public int[] getAdders(int fluent) {
+        return this.adders[fluent];
+    }
+
+    /**
+     * Returns the actions that make a fluent false.
+     *
+     * @param fluent the position of the fluent.
+     * @return the positions of the actions.
+     */
+    public int[] getDeleters(int fluent) {
+        return this.deleters[fluent];
+    }
+
+    /**
+     * Returns the actions that need a fluent to be true.
+     *
+     * @param fluent the position of the fluent.
+     * @return the positions of the actions.
+     */
+    public int[] getPositiveRequirers(int fluent) {
+        return this.requirers_pos[fluent];
+    }
+
+    /**
+     * Returns the actions that need a fluent to be false.
+     *
+     * @param fluent the position of the fluent.
+     * @return the positions of the actions.
+     */
+    public int[] getNegativeRequirers(int fluent) {
+        return this.requirers_neg[fluent];
+    }
+
+    /**
+     * Returns whether a fluent is true in the initial state.
+     *
+     * @param fluent the position of the fluent.
+     * @return the value of the fluent in the initial state.
+     */
+    public boolean isInitiallyTrue(int fluent) {
+        return this.initial_state[fluent];
+    }
+
+    /**
+     * Returns the fluents of the goal.
+     *
+     * @return the signed positions of the fluents of the goal.
+     */
+    public int[] getGoal() {
+        return this.goal;
+    }
+
+    /**
+     * Builds the index from each fluent to the actions where it appears with the given sign.
+     *
+     * @param descriptions the preconditions or effects of each action.
+     * @param positive whether the positive or the negative occurrences are indexed.
+     * @return the positions of the actions, for each fluent.
+     */
+    private int[][] invert(int[][] descriptions, boolean positive) {
+        int[] sizes = new int[this.fluent_count];
+        for (int[] description : descriptions) {
+            for (int fluent : description) {
+                if (fluent > 0 == positive) {
+                    sizes[Math.abs(fluent) - 1]++;
+                }
+            }
+        }
+        int[][] index = new int[this.fluent_count][];
+        for (int f = 0; f < this.fluent_count; f++) {
+            index[f] = new int[sizes[f]];
+            sizes[f] = 0;
+        }
+        for (int a = 0; a < descriptions.length; a++) {
+            for (int fluent : descriptions[a]) {
+                if (fluent > 0 == positive) {
+                    int f = Math.abs(fluent) - 1;
+                    index[f][sizes[f]++] = a;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Lists the fluents of a description as signed positions starting at 1: positive for the positive fluents, negative
+     * for the negative ones.
+     *
+     * @param description the description to read.
+     * @return the signed positions of the fluents of the description.
+     */
+    static int[] get_fluents(AbstractFluentDescription description) {
+        BitSet fluents_pos = description.getPositiveFluents();
+        BitSet fluents_neg = description.getNegativeFluents();
+        int[] fluents = new int[fluents_pos.cardinality() + fluents_neg.cardinality()];
+        int i = 0;
+        for (int f = fluents_pos.nextSetBit(0); f >= 0; f = fluents_pos.nextSetBit(f + 1)) {
+            fluents[i++] = f + 1;
+        }
+        for (int f = fluents_neg.nextSetBit(0); f >= 0; f = fluents_neg.nextSetBit(f + 1)) {
+            fluents[i++] = -f - 1;
+        }
+        return fluents;
+    }
+}
@@ -0,0 +1,88 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * This sink only counts the variables and clauses it receives. It is used to measure a formula without building it,
+ * and as the base of the sinks that actually store the clauses somewhere.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class CountingClauseSink implements ClauseSink {
+
+    /**
+     * The highest variable sent to the sink.
+     */
+    private int variable_count = 0;
+
+    /**
+     * The number of clauses and cardinality constraints sent to the sink.
+     */
+    private int clause_count = 0;
+
+    /**
+     * The category of the constraints being sent to the sink.
+     */
+    private ClauseCategory category = ClauseCategory.ACTION;
+
+    /**
+     * The number of constraints of each category sent to the sink.
+     */
+    private final int[] category_counts = new int[ClauseCategory.values().length];
+
+    @Override
+    public void addVariables(int count) {
+        this.variable_count = Math.max(this.variable_count, count);
+    }
+
+    @Override
+    public void setCategory(ClauseCategory category) {
+        this.category = category;
+    }
+
+    /**
+     * Returns the category of the constraints being sent to the sink.
+     *
+     * @return the current category.
+     */
+    protected final ClauseCategory getCategory() {
+        return this.category;
+    }
+
+    @Override
+    public void addClause(IVecInt literals) throws ContradictionException {
+        this.count(literals);
+    }
+
+    @Override
+    public void addAtMost(IVecInt literals, int degree) throws ContradictionException {
+        this.count(literals);
+    }
+
+    /**
+     * Records a clause or a cardinality constraint in the counts of the sink.
+     *
+     * @param literals the literals of the constraint.
+     */
+    protected final void count(IVecInt literals) {
+        this.clause_count++;
+        this.category_counts[this.category.ordinal()]++;
+    }
+
+    @Override
+    public int getVariableCount() {
+        return this.variable_count;
+    }
+
+    @Override
+    public int getClauseCount() {
+        return this.clause_count;
+    }
+
+    @Override
+    public int getClauseCount(ClauseCategory category) {
+        return this.category_counts[category.ordinal()];
+    }
+}
@@ -0,0 +1,228 @@
+package fr.uga.pddl4j.mcts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates random problems of the Depot domain found in the resources directory, so that the planner can
+ * be measured on problems of any size. Every place gets at least one pallet and one hoist, the crates are stacked at
+ * random on the pallets, and the goal is another random stacking of all the crates. Trucks can drive between any two
+ * places, so every generated problem has a plan.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class DepotGenerator {
+
+    /**
+     * The number of depots.
+     */
+    private final int depots;
+
+    /**
+     * The number of distributors.
+     */
+    private final int distributors;
+
+    /**
+     * The number of trucks.
+     */
+    private final int trucks;
+
+    /**
+     * The number of pallets, at least one per place.
+     */
+    private final int pallets;
+
+    /**
+     * The number of hoists, at least one per place.
+     */
+    private final int hoists;
+
+    /**
+     * The number of crates.
+     */
+    private final int crates;
+
+    /**
+     * Creates a generator of problems of the given size.
+     *
+     * @param depots the number of depots.
+     * @param distributors the number of distributors.
+     * @param trucks the number of trucks.
+     * @param pallets the number of pallets, at least one per place.
+     * @param hoists the number of hoists, at least one per place.
+     * @param crates the number of crates.
+     */
+    public DepotGenerator(int depots, int distributors, int trucks, int pallets, int hoists, int crates) {
+        if (depots + distributors < 1 || trucks < 1 || crates < 1) {
+            throw new IllegalArgumentException("A problem needs at least one place, one truck and one crate");
+        }
+        if (pallets < depots + distributors || hoists < depots + distributors) {
+            throw new IllegalArgumentException("Every place needs at least one pallet and one hoist");
+        }
+        this.depots = depots;
+        this.distributors = distributors;
+        this.trucks = trucks;
+        this.pallets = pallets;
+        this.hoists = hoists;
+        this.crates = crates;
+    }
+
+    /**
+     * Writes a random problem in PDDL.
+     *
+     * @param file the file to write.
+     * @param seed the seed of the random choices, so that a problem can be generated again.
+     * @throws IOException if the file could not be written.
+     */
+    public void generate(File file, long seed) throws IOException {
+        Random random = new Random(seed);
+        int places = this.depots + this.distributors;
+        int[] pallet_places = this.spread(this.pallets, places, random);
+        int[] hoist_places = this.spread(this.hoists, places, random);
+
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("(define (problem depotprob" + seed + ") (:domain Depot)");
+            out.println("(:objects");
+            if (this.depots > 0) {
+                out.println("\t" + names("depot", this.depots) + "- Depot");
+            }
+            if (this.distributors > 0) {
+                out.println("\t" + names("distributor", this.distributors) + "- Distributor");
+            }
+            out.println("\t" + names("truck", this.trucks) + "- Truck");
+            out.println("\t" + names("pallet", this.pallets) + "- Pallet");
+            out.println("\t" + names("crate", this.crates) + "- Crate");
+            out.println("\t" + names("hoist", this.hoists) + "- Hoist)");
+
+            out.println("(:init");
+            List<List<Integer>> stacks = this.stack(random);
+            for (int p = 0; p < this.pallets; p++) {
+                out.println("\t(at pallet" + p + " " + this.place(pallet_places[p]) + ")");
+                List<Integer> stack = stacks.get(p);
+                out.println("\t(clear " + (stack.isEmpty() ? "pallet" + p : "crate" + stack.get(stack.size() - 1))
+                        + ")");
+            }
+            for (int t = 0; t < this.trucks; t++) {
+                out.println("\t(at truck" + t + " " + this.place(random.nextInt(places)) + ")");
+            }
+            for (int h = 0; h < this.hoists; h++) {
+                out.println("\t(at hoist" + h + " " + this.place(hoist_places[h]) + ")");
+                out.println("\t(available hoist" + h + ")");
+            }
+            for (int p = 0; p < this.pallets; p++) {
+                String below = "pallet" + p;
+                for (int crate : stacks.get(p)) {
+                    out.println("\t(at crate" + crate + " " + this.place(pallet_places[p]) + ")");
+                    out.println("\t(on crate" + crate + " " + below + ")");
+                    below = "crate" + crate;
+                }
+            }
+            out.println(")");
+
+            out.println();
+            out.println("(:goal (and");
+            stacks = this.stack(random);
+            for (int p = 0; p < this.pallets; p++) {
+                String below = "pallet" + p;
+                for (int crate : stacks.get(p)) {
+                    out.println("\t\t(on crate" + crate + " " + below + ")");
+                    below = "crate" + crate;
+                }
+            }
+            out.println("\t)");
+            out.println("))");
+        }
+    }
+
+    /**
+     * Puts one object at each place, then the remaining objects at random places.
+     *
+     * @param objects the number of objects.
+     * @param places the number of places.
+     * @param random the source of the random choices.
+     * @return the place of each object.
+     */
+    private int[] spread(int objects, int places, Random random) {
+        int[] object_places = new int[objects];
+        for (int i = 0; i < objects; i++) {
+            object_places[i] = i < places ? i : random.nextInt(places);
+        }
+        return object_places;
+    }
+
+    /**
+     * Stacks the crates in a random order on random pallets.
+     *
+     * @param random the source of the random choices.
+     * @return the crates on each pallet, from the bottom to the top.
+     */
+    private List<List<Integer>> stack(Random random) {
+        List<List<Integer>> stacks = new ArrayList<>();
+        for (int p = 0; p < this.pallets; p++) {
+            stacks.add(new ArrayList<>());
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int c = 0; c < this.crates; c++) {
+            order.add(c);
+        }
+        Collections.shuffle(order, random);
+        for (int crate : order) {
+            stacks.get(random.nextInt(this.pallets)).add(crate);
+        }
+        return stacks;
+    }
+
+    /**
+     * Returns the name of a place: the depots come first, then the distributors.
+     *
+     * @param place the position of the place.
+     * @return the name of the place.
+     */
+    private String place(int place) {
+        return place < this.depots ? "depot" + place : "distributor" + (place - this.depots);
+    }
+
+    private static String names(String prefix, int count) {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            names.append(prefix).append(i).append(' ');
+        }
+        return names.toString();
+    }
+
+    /**
+     * The main method of the class. The problem is written in the resources directory, so that it can be given to
+     * <code>SAT4JPlannerConfiguration</code> or to the benchmarks by its name.
+     *
+     * @param args the name of the problem, the numbers of depots, distributors, trucks, pallets, hoists and crates,
+     *             and optionally the seed of the random choices.
+     */
+    public static void main(String[] args) {
+        if (args.length < 7) {
+            System.out.println("Usage: DepotGenerator <name> <depots> <distributors> <trucks> <pallets> <hoists> "
+                    + "<crates> [seed]");
+            return;
+        }
+
+        // The path to the resources directory
+        final String path_resources = new File("").getAbsolutePath() + File.separator + "resources" + File.separator;
+
+        try {
+            DepotGenerator generator = new DepotGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]),
+                    Integer.parseInt(args[6]));
+            long seed = args.length > 7 ? Long.parseLong(args[7]) : System.currentTimeMillis();
+            generator.generate(new File(path_resources + args[0] + ".pddl"), seed);
+            System.out.println("Problem written to " + path_resources + args[0] + ".pddl with seed " + seed + ".");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.IVecInt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This sink writes the clauses in a DIMACS file through a buffered channel, for debugging purposes and for external
+ * solvers. The numbers of variables and clauses are only known once the formula is complete, so a fixed-width header
+ * is reserved at the start of the file and filled in when the sink is closed.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class DimacsClauseSink extends CountingClauseSink {
+
+    /**
+     * The number of characters reserved for each count of the header.
+     */
+    private static final int HEADER_WIDTH = 10;
+
+    /**
+     * The channel of the DIMACS file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The buffer the clauses are written into before being flushed to the channel.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * The position of the header within the file.
+     */
+    private final long header_position;
+
+    /**
+     * The digits of the literal being written, in reverse order.
+     */
+    private final byte[] digits = new byte[11];
+
+    /**
+     * Creates a sink writing in the given file, which is overwritten if it already exists.
+     *
+     * @param path the path of the DIMACS file.
+     * @param comments the comment lines written at the start of the file.
+     * @throws IOException if the file could not be opened.
+     */
+    public DimacsClauseSink(Path path, String... comments) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        StringBuilder comment_text = new StringBuilder();
+        for (String comment : comments) {
+            comment_text.append("c ");
+            comment_text.append(comment);
+            comment_text.append("\n");
+        }
+        this.write(comment_text.toString().getBytes(StandardCharsets.US_ASCII));
+        this.header_position = comment_text.length();
+        this.write(this.header().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void addClause(IVecInt literals) {
+        try {
+            this.count(literals);
+            for (int i = 0; i < literals.size(); i++) {
+                this.write_literal(literals.get(i));
+                this.put((byte) ' ');
+            }
+            this.put((byte) '0');
+            this.put((byte) '\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * DIMACS has no notation for cardinality constraints, so a constraint of degree 1 is written as one binary clause
+     * for every pair of literals. Higher degrees are not supported.
+     *
+     * @param literals the literals of the constraint, in DIMACS notation.
+     * @param degree the maximum number of true literals, which must be 1.
+     */
+    @Override
+    public void addAtMost(IVecInt literals, int degree) {
+        if (degree != 1) {
+            throw new UnsupportedOperationException("DIMACS files cannot describe at-most-" + degree + " constraints");
+        }
+        IVecInt clause = new VecInt(2);
+        for (int i = 0; i < literals.size(); i++) {
+            for (int j = i + 1; j < literals.size(); j++) {
+                clause.clear();
+                clause.push(-literals.get(i));
+                clause.push(-literals.get(j));
+                this.addClause(clause);
+            }
+        }
+    }
+
+    /**
+     * Flushes the remaining clauses, fills in the header and closes the file.
+     *
+     * @throws IOException if the file could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        this.flush();
+        this.channel.write(ByteBuffer.wrap(this.header().getBytes(StandardCharsets.US_ASCII)), this.header_position);
+        this.channel.close();
+    }
+
+    /**
+     * Returns the header line of the file, padded to a fixed width so that it can be overwritten in place.
+     *
+     * @return the header line.
+     */
+    private String header() {
+        return String.format("p cnf %" + HEADER_WIDTH + "d %" + HEADER_WIDTH + "d\n",
+                this.getVariableCount(), this.getClauseCount());
+    }
+
+    private void write_literal(int literal) throws IOException {
+        if (literal < 0) {
+            this.put((byte) '-');
+            literal = -literal;
+        }
+        int length = 0;
+        do {
+            this.digits[length++] = (byte) ('0' + literal % 10);
+            literal /= 10;
+        } while (literal != 0);
+        while (length > 0) {
+            this.put(this.digits[--length]);
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            this.flush();
+        }
+        this.buffer.put(b);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            this.put(b);
+        }
+    }
+
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
@@ -0,0 +1,396 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.problem.operator.Action;
+import fr.uga.pddl4j.problem.operator.Condition;
+import fr.uga.pddl4j.problem.operator.Effect;
+import fr.uga.pddl4j.util.BitVector;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the compiled problems and the step templates of the encoder on disk, so that solving the same
+ * problem again skips the grounding and the compilation of the transitions.
+ * <p>
+ * An entry is keyed by a hash of the contents of the domain and problem files and of the settings the template depends
+ * on. It is written in a compact binary format of big-endian integers, which is memory-mapped and copied into the
+ * arrays of the encoder when it is read back. The names of the actions are stored as well, so that the actions of a plan
+ * can be rebuilt with their preconditions and effects without the PDDL4J problem.
+ * <p>
+ * The cache is bounded in size: each time an entry is read, its file is touched, and each time an entry is written,
+ * the least recently used files are deleted until the cache fits in its bound again.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class EncodingCache {
+
+    /**
+     * The first integer of every entry, "S4JC" in ASCII.
+     */
+    private static final int MAGIC = 0x53344A43;
+
+    /**
+     * The version of the format of the entries, part of the keys so that old entries are never read.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The extension of the entry files.
+     */
+    private static final String EXTENSION = ".bin";
+
+    /**
+     * The directory of the entry files.
+     */
+    private final Path directory;
+
+    /**
+     * The size the entry files must fit in, in bytes.
+     */
+    private final long max_size;
+
+    /**
+     * Opens a cache in a directory, creating the directory if needed.
+     *
+     * @param directory the directory of the entry files.
+     * @param max_size the size the entry files must fit in, in bytes.
+     * @throws IOException if the directory could not be created.
+     */
+    public EncodingCache(Path directory, long max_size) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.max_size = max_size;
+    }
+
+    /**
+     * Computes the key of a problem: a hash of the contents of its files and of the settings the template depends on.
+     *
+     * @param domain the domain file.
+     * @param problem the problem file.
+     * @param at_most_one the encoding of the at-most-one constraints.
+     * @param semantics the step semantics.
+     * @param reachability_pruning whether the formulae are pruned with a relaxed planning graph.
+     * @param invariants whether the fluent mutexes are added to every step.
+     * @param state_encoding the way the state of each step is described.
+     * @param lazy whether most constraints are only added once violated.
+     * @return the key, in hexadecimal.
+     * @throws IOException if the files could not be read.
+     */
+    public String key(File domain, File problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                      boolean reachability_pruning, boolean invariants, StateEncoding state_encoding,
+                      boolean lazy) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        String settings = VERSION + " " + at_most_one + " " + semantics + " " + reachability_pruning + " "
+                + invariants + " " + state_encoding + " " + lazy + "\n";
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        for (File file : new File[] {domain, problem}) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(content.length).array());
+            digest.update(content);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Reads an entry back. An entry that cannot be read is deleted, and treated as missing.
+     *
+     * @param key the key of the entry.
+     * @return the entry, or null if the cache has no valid entry for this key.
+     */
+    public Entry load(String key) {
+        Path file = this.directory.resolve(key + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not an entry of this version");
+            }
+            int fluent_count = buffer.getInt();
+            boolean[] initial_state = new boolean[fluent_count];
+            for (int fluent : read_ints(buffer)) {
+                initial_state[fluent] = true;
+            }
+            int[] goal = read_ints(buffer);
+            int[][] preconditions = read_table(buffer);
+            int[][] effects = read_table(buffer);
+            CompiledProblem problem = new CompiledProblem(fluent_count, preconditions, effects, initial_state, goal);
+
+            int[] literals = read_ints(buffer);
+            int[] ends = read_ints(buffer);
+            int[] degrees = read_ints(buffer);
+            byte[] categories = new byte[buffer.getInt()];
+            buffer.get(categories);
+            StepTemplate template = new StepTemplate(literals, ends, degrees, categories);
+
+            String[] action_names = new String[buffer.getInt()];
+            for (int a = 0; a < action_names.length; a++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                action_names[a] = new String(name, StandardCharsets.UTF_8);
+            }
+            if (buffer.hasRemaining() || action_names.length != problem.getActionCount()) {
+                throw new IOException("Inconsistent entry");
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(problem, template, action_names);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                 | ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // The entry will be overwritten by the next store.
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry, then evicts the least recently used entries if the cache outgrew its bound. The entry is written
+     * to a temporary file first, so that a concurrent reader never sees it half written.
+     *
+     * @param key the key of the entry.
+     * @param encoder the encoder of the problem, holding the compiled problem and the template.
+     * @param action_names the name of each action of the problem.
+     * @throws IOException if the entry could not be written.
+     */
+    public void store(String key, PlanningEncoder encoder, String[] action_names) throws IOException {
+        CompiledProblem problem = encoder.getProblem();
+        StepTemplate template = encoder.getTemplate();
+        Path temporary = Files.createTempFile(this.directory, key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(problem.getFluentCount());
+                List<Integer> initial_state = new ArrayList<>();
+                for (int f = 0; f < problem.getFluentCount(); f++) {
+                    if (problem.isInitiallyTrue(f)) {
+                        initial_state.add(f);
+                    }
+                }
+                write_ints(out, initial_state.stream().mapToInt(Integer::intValue).toArray());
+                write_ints(out, problem.getGoal());
+                int[][] preconditions = new int[problem.getActionCount()][];
+                int[][] effects = new int[problem.getActionCount()][];
+                for (int a = 0; a < problem.getActionCount(); a++) {
+                    preconditions[a] = problem.getPreconditions(a);
+                    effects[a] = problem.getEffects(a);
+                }
+                write_table(out, preconditions);
+                write_table(out, effects);
+
+                write_ints(out, template.getLiterals());
+                write_ints(out, template.getEnds());
+                write_ints(out, template.getDegrees());
+                byte[] categories = template.getCategories();
+                out.writeInt(categories.length);
+                out.write(categories);
+
+                out.writeInt(action_names.length);
+                for (String action_name : action_names) {
+                    byte[] name = action_name.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(name.length);
+                    out.write(name);
+                }
+            }
+            Files.move(temporary, this.directory.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        this.evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its bound. The most recent entry is always kept.
+     *
+     * @throws IOException if the directory could not be listed.
+     */
+    private void evict() throws IOException {
+        Map<Path, BasicFileAttributes> files = new HashMap<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + EXTENSION)) {
+            for (Path file : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                files.put(file, attributes);
+                size += attributes.size();
+            }
+        }
+        List<Path> order = new ArrayList<>(files.keySet());
+        order.sort(Comparator.comparing(file -> files.get(file).lastModifiedTime()));
+        for (int i = 0; i < order.size() - 1 && size > this.max_size; i++) {
+            if (Files.deleteIfExists(order.get(i))) {
+                size -= files.get(order.get(i)).size();
+            }
+        }
+    }
+
+    private static void write_ints(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void write_table(DataOutputStream out, int[][] rows) throws IOException {
+        int[] ends = new int[rows.length];
+        int end = 0;
+        for (int r = 0; r < rows.length; r++) {
+            end += rows[r].length;
+            ends[r] = end;
+        }
+        write_ints(out, ends);
+        out.writeInt(end);
+        for (int[] row : rows) {
+            for (int value : row) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static int[] read_ints(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    private static int[][] read_table(ByteBuffer buffer) {
+        int[] ends = read_ints(buffer);
+        int[] values = read_ints(buffer);
+        int[][] rows = new int[ends.length][];
+        int start = 0;
+        for (int r = 0; r < ends.length; r++) {
+            rows[r] = Arrays.copyOfRange(values, start, ends[r]);
+            start = ends[r];
+        }
+        return rows;
+    }
+
+    /**
+     * An entry of the cache: the compiled problem, the template of its transitions and the names of its actions.
+     */
+    public static final class Entry {
+
+        /**
+         * The compiled problem.
+         */
+        private final CompiledProblem problem;
+
+        /**
+         * The template of the transitions from the fixpoint layer of the planning graph on.
+         */
+        private final StepTemplate template;
+
+        /**
+         * The name of each action of the problem.
+         */
+        private final String[] action_names;
+
+        /**
+         * Creates an entry.
+         *
+         * @param problem the compiled problem.
+         * @param template the template of the transitions.
+         * @param action_names the name of each action of the problem.
+         */
+        private Entry(CompiledProblem problem, StepTemplate template, String[] action_names) {
+            this.problem = problem;
+            this.template = template;
+            this.action_names = action_names;
+        }
+
+        /**
+         * Returns the compiled problem.
+         *
+         * @return the compiled problem.
+         */
+        public CompiledProblem getProblem() {
+            return this.problem;
+        }
+
+        /**
+         * Returns the template of the transitions from the fixpoint layer of the planning graph on.
+         *
+         * @return the template.
+         */
+        StepTemplate getTemplate() {
+            return this.template;
+        }
+
+        /**
+         * Returns the name of each action of the problem.
+         *
+         * @return the names of the actions, which must not be modified.
+         */
+        public String[] getActionNames() {
+            return this.action_names;
+        }
+
+        /**
+         * Rebuilds the actions of the problem from their names and their compiled preconditions and effects, in the
+         * order of the compiled problem.
+         *
+         * @return the actions of the problem.
+         */
+        public List<Action> getActions() {
+            List<Action> actions = new ArrayList<>(this.action_names.length);
+            for (int a = 0; a < this.action_names.length; a++) {
+                BitVector[] precondition = to_bit_vectors(this.problem.getPreconditions(a));
+                BitVector[] effect = to_bit_vectors(this.problem.getEffects(a));
+                actions.add(new Action(this.action_names[a], 0, new Condition(precondition[0], precondition[1]),
+                        new Effect(effect[0], effect[1])));
+            }
+            return actions;
+        }
+
+        /**
+         * Splits signed fluent positions into the bit vectors of the positive and the negative fluents.
+         *
+         * @param description the signed positions of the fluents, starting at 1.
+         * @return the positive fluents, then the negative fluents.
+         */
+        private static BitVector[] to_bit_vectors(int[] description) {
+            BitVector positive = new BitVector();
+            BitVector negative = new BitVector();
+            for (int fluent : description) {
+                (fluent > 0 ? positive : negative).set(Math.abs(fluent) - 1);
+            }
+            return new BitVector[] {positive, negative};
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package fr.uga.pddl4j.mcts;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This JDK Flight Recorder event is committed once for each horizon the planner tries, with the same measures as the
+ * {@link HorizonMetrics} of the horizon. The event spans the encoding and the solving of the horizon.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+@Name("fr.uga.pddl4j.mcts.Horizon")
+@Label("Planning Horizon")
+@Category({"PDDL4J", "SAT4J Planner"})
+@Description("The encoding and the solving of the formula of a horizon")
+class HorizonEvent extends Event {
+
+    @Label("Horizon")
+    int horizon;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Steps")
+    int steps;
+
+    @Label("Cumulative")
+    @Description("Whether the formula was carried over from the previous horizons")
+    boolean cumulative;
+
+    @Label("Variables")
+    int variables;
+
+    @Label("Clauses")
+    int clauses;
+
+    @Label("Initial State Clauses")
+    int initialStateClauses;
+
+    @Label("Goal Clauses")
+    int goalClauses;
+
+    @Label("Action Clauses")
+    int actionClauses;
+
+    @Label("Frame Clauses")
+    int frameClauses;
+
+    @Label("Mutex Clauses")
+    int mutexClauses;
+
+    @Label("Invariant Clauses")
+    int invariantClauses;
+
+    @Label("Added Clauses")
+    @Description("The clauses sent for this horizon")
+    int addedClauses;
+
+    @Label("Goal Assumptions")
+    int goalAssumptions;
+
+    @Label("Refinements")
+    @Description("The times the constraints violated by a model were added in lazy mode")
+    int refinements;
+
+    @Label("Encode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long encodeTime;
+
+    @Label("Solve Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long solveTime;
+
+    @Label("Conflicts")
+    long conflicts;
+
+    @Label("Decisions")
+    long decisions;
+
+    @Label("Propagations")
+    long propagations;
+
+    @Label("Learned Clauses")
+    long learnedClauses;
+
+    @Label("Heap Used")
+    @Description("The peak heap usage of the process for this horizon, or -1 if it is not measured")
+    @DataAmount
+    long heap;
+}
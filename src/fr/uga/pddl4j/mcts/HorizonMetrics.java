@@ -0,0 +1,570 @@
+package fr.uga.pddl4j.mcts;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class records the measures of one horizon tried by the planner: the size of the formula by kind of variable and
+ * category of clause, the time spent encoding and solving it, the counters of the solvers and the heap usage.
+ * <p>
+ * A measure is started before the formula of the horizon is encoded, then completed once the formula is encoded and
+ * once it is solved. It is then also committed as a {@link HorizonEvent} to the JDK Flight Recorder, if a recording is
+ * running.
+ * The measures of a search can be written as JSON or CSV.
+ * <p>
+ * When a formula is carried over from the previous horizons, as in an incremental search, the clause counts describe
+ * the whole formula and are marked as cumulative, while the added clauses only count those sent for this horizon. Its
+ * goal is then given as assumptions rather than clauses, and counted as such. In lazy mode, the constraints added
+ * each time a model is refined are counted with the clauses of the horizon, along with the number of refinements. The
+ * heap usage is the peak of the whole process while the horizon is tried: the peaks of the heap memory pools are reset
+ * when the measure starts, and summed once it is completed.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class HorizonMetrics {
+
+    /**
+     * The possible outcomes of a horizon.
+     */
+    public enum Outcome {
+
+        /**
+         * A plan was found for the horizon.
+         */
+        SATISFIABLE,
+
+        /**
+         * The horizon was proven to have no plan.
+         */
+        UNSATISFIABLE,
+
+        /**
+         * The solver reached its timeout.
+         */
+        TIMEOUT,
+
+        /**
+         * The formula was found to be unsatisfiable while it was encoded.
+         */
+        CONTRADICTION
+    }
+
+    /**
+     * The columns of the CSV format.
+     */
+    private static final String CSV_HEADER = "horizon,outcome,steps,cumulative,fluent_variables,action_variables,"
+            + "auxiliary_variables,initial_state_clauses,goal_clauses,action_clauses,frame_clauses,mutex_clauses,"
+            + "invariant_clauses,added_initial_state_clauses,added_goal_clauses,added_action_clauses,"
+            + "added_frame_clauses,added_mutex_clauses,added_invariant_clauses,goal_assumptions,refinements,encode_ms,"
+            + "solve_ms,conflicts,decisions,propagations,learned_clauses,heap_bytes";
+
+    /**
+     * The heap usage of a measure taken without it.
+     */
+    private static final long NOT_MEASURED = -1;
+
+    /**
+     * The number of steps of the formula.
+     */
+    private final int horizon;
+
+    /**
+     * Whether the formula was carried over from the previous horizons.
+     */
+    private final boolean cumulative;
+
+    /**
+     * Whether the heap usage is measured.
+     */
+    private final boolean heap_measured;
+
+    /**
+     * The number of constraints of each category sent to the sink before the formula of the horizon.
+     */
+    private final int[] clauses_before = new int[ClauseCategory.values().length];
+
+    /**
+     * The event committed to the flight recorder.
+     */
+    private final HorizonEvent event = new HorizonEvent();
+
+    /**
+     * The time at the start of the current phase, as given by System.nanoTime().
+     */
+    private long phase_start;
+
+    /**
+     * The statistics of the solvers before the formula was solved.
+     */
+    private Map<String, Number> statistics_before;
+
+    /**
+     * The number of steps of the formula, more than the horizon if a longer horizon was encoded before.
+     */
+    private int steps;
+
+    /**
+     * The number of variables of the fluents over all the steps.
+     */
+    private int fluent_variables;
+
+    /**
+     * The number of variables of the actions over all the steps.
+     */
+    private int action_variables;
+
+    /**
+     * The number of auxiliary variables of the at-most-one constraints over all the steps.
+     */
+    private int auxiliary_variables;
+
+    /**
+     * The number of constraints of each category in the formula.
+     */
+    private final int[] clauses = new int[ClauseCategory.values().length];
+
+    /**
+     * The number of constraints of each category sent for this horizon.
+     */
+    private final int[] added_clauses = new int[ClauseCategory.values().length];
+
+    /**
+     * The number of goal literals given as assumptions rather than clauses.
+     */
+    private int goal_assumptions;
+
+    /**
+     * The number of times the constraints violated by a model were added to the formula.
+     */
+    private int refinements;
+
+    /**
+     * The time spent encoding the formula, in nanoseconds.
+     */
+    private long encode_time;
+
+    /**
+     * The time spent solving the formula, in nanoseconds.
+     */
+    private long solve_time;
+
+    /**
+     * The number of conflicts the solvers reached on the formula.
+     */
+    private long conflicts;
+
+    /**
+     * The number of decisions the solvers took on the formula.
+     */
+    private long decisions;
+
+    /**
+     * The number of literals the solvers propagated on the formula.
+     */
+    private long propagations;
+
+    /**
+     * The number of clauses the solvers learned on the formula.
+     */
+    private long learned_clauses;
+
+    /**
+     * The peak heap usage while the horizon was tried, in bytes, or -1 if it is not measured.
+     */
+    private long heap = NOT_MEASURED;
+
+    /**
+     * The outcome of the horizon.
+     */
+    private Outcome outcome;
+
+    /**
+     * Starts measuring a horizon, before its formula is encoded.
+     *
+     * @param horizon the number of steps of the formula.
+     * @param sink the sink holding the formula of the previous horizons, or null if the formula is sent to a new one.
+     * @param heap_measured whether the heap usage is measured, which only makes sense when no other search shares the
+     *                      process.
+     */
+    public HorizonMetrics(int horizon, ClauseSink sink, boolean heap_measured) {
+        this.horizon = horizon;
+        this.cumulative = sink != null;
+        this.heap_measured = heap_measured;
+        if (sink != null) {
+            for (ClauseCategory category : ClauseCategory.values()) {
+                this.clauses_before[category.ordinal()] = sink.getClauseCount(category);
+            }
+        }
+        this.reset_heap_peak();
+        this.event.begin();
+        this.phase_start = System.nanoTime();
+    }
+
+    /**
+     * Completes the encoding phase, once the formula of the horizon was sent to a sink.
+     *
+     * @param encoder the encoder of the formula.
+     * @param sink the sink that received the formula.
+     * @param solver the portfolio about to solve the formula.
+     * @param steps the number of steps of the formula held by the sink.
+     * @param goal_assumptions the number of goal literals given as assumptions, 0 if the goal is encoded as clauses.
+     */
+    public void encoded(PlanningEncoder encoder, ClauseSink sink, SolverPortfolio solver, int steps,
+                        int goal_assumptions) {
+        this.encode_time = System.nanoTime() - this.phase_start;
+        CompiledProblem problem = encoder.getProblem();
+        this.steps = steps;
+        this.fluent_variables = (steps + 1) * problem.getFluentCount();
+        this.action_variables = steps * problem.getActionCount();
+        this.auxiliary_variables = steps
+                * (encoder.getVariablesPerStep() - problem.getFluentCount() - problem.getActionCount());
+        for (ClauseCategory category : ClauseCategory.values()) {
+            this.clauses[category.ordinal()] = sink.getClauseCount(category);
+            this.added_clauses[category.ordinal()] = this.clauses[category.ordinal()]
+                    - this.clauses_before[category.ordinal()];
+        }
+        this.goal_assumptions = goal_assumptions;
+        this.statistics_before = solver.getStat();
+        this.phase_start = System.nanoTime();
+    }
+
+    /**
+     * Records a refinement of the formula in lazy mode, once the constraints violated by a model were sent to a sink,
+     * so that they are counted with the clauses of the horizon.
+     *
+     * @param sink the sink that received the formula and its refinements.
+     */
+    public void refined(ClauseSink sink) {
+        this.refinements++;
+        for (ClauseCategory category : ClauseCategory.values()) {
+            this.clauses[category.ordinal()] = sink.getClauseCount(category);
+            this.added_clauses[category.ordinal()] = this.clauses[category.ordinal()]
+                    - this.clauses_before[category.ordinal()];
+        }
+    }
+
+    /**
+     * Completes the measure of the horizon and commits its event to the flight recorder.
+     *
+     * @param outcome the outcome of the horizon.
+     * @param solver the portfolio that solved the formula.
+     */
+    public void completed(Outcome outcome, SolverPortfolio solver) {
+        this.completed(outcome, solver, System.nanoTime() - this.phase_start);
+    }
+
+    /**
+     * Completes the measure of a horizon whose formula was solved in several slices, interleaved with other horizons,
+     * and commits its event to the flight recorder.
+     *
+     * @param outcome the outcome of the horizon.
+     * @param solver the portfolio that solved the formula.
+     * @param solve_time the time spent solving the formula over all its slices, in nanoseconds.
+     */
+    public void completed(Outcome outcome, SolverPortfolio solver, long solve_time) {
+        if (outcome == Outcome.CONTRADICTION) {
+            this.encode_time = System.nanoTime() - this.phase_start;
+        } else {
+            this.solve_time = solve_time;
+            Map<String, Number> statistics = solver.getStat();
+            this.conflicts = delta(statistics, this.statistics_before, "conflicts");
+            this.decisions = delta(statistics, this.statistics_before, "decisions");
+            this.propagations = delta(statistics, this.statistics_before, "propagations");
+            this.learned_clauses = delta(statistics, this.statistics_before, "learnedclauses");
+        }
+        this.outcome = outcome;
+        this.read_heap_peak();
+        this.commit();
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools to their current usage, so that the peaks read once the horizon
+     * is completed only cover this horizon.
+     */
+    private void reset_heap_peak() {
+        if (this.heap_measured) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the peak heap usage of the horizon, as the sum of the peak usages of the heap memory pools since they were
+     * reset. The pools may peak at different times, so the sum is an upper bound of the peak of the whole heap, but it
+     * catches the garbage collected between the phases of the horizon, which samples of the used heap miss.
+     */
+    private void read_heap_peak() {
+        if (this.heap_measured) {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            this.heap = peak;
+        }
+    }
+
+    /**
+     * Returns the number of steps of the formula.
+     *
+     * @return the horizon.
+     */
+    public int getHorizon() {
+        return this.horizon;
+    }
+
+    /**
+     * Returns the outcome of the horizon.
+     *
+     * @return the outcome, or null if the measure was not completed.
+     */
+    public Outcome getOutcome() {
+        return this.outcome;
+    }
+
+    /**
+     * Returns the number of variables of the formula.
+     *
+     * @return the number of fluent, action and auxiliary variables.
+     */
+    public int getVariableCount() {
+        return this.fluent_variables + this.action_variables + this.auxiliary_variables;
+    }
+
+    /**
+     * Returns whether the formula was carried over from the previous horizons, so that its clause counts are
+     * cumulative.
+     *
+     * @return whether the clause counts are cumulative.
+     */
+    public boolean isCumulative() {
+        return this.cumulative;
+    }
+
+    /**
+     * Returns the number of steps of the formula, which is more than the horizon if a longer horizon was encoded
+     * before.
+     *
+     * @return the number of steps.
+     */
+    public int getStepCount() {
+        return this.steps;
+    }
+
+    /**
+     * Returns the number of constraints of a category in the formula, cumulative over the previous horizons if the
+     * formula was carried over.
+     *
+     * @param category the category of the constraints.
+     * @return the number of constraints.
+     */
+    public int getClauseCount(ClauseCategory category) {
+        return this.clauses[category.ordinal()];
+    }
+
+    /**
+     * Returns the number of constraints of a category sent for this horizon.
+     *
+     * @param category the category of the constraints.
+     * @return the number of constraints.
+     */
+    public int getAddedClauseCount(ClauseCategory category) {
+        return this.added_clauses[category.ordinal()];
+    }
+
+    /**
+     * Returns the number of goal literals given as assumptions rather than clauses.
+     *
+     * @return the number of assumptions.
+     */
+    public int getGoalAssumptionCount() {
+        return this.goal_assumptions;
+    }
+
+    /**
+     * Returns the number of times the constraints violated by a model were added to the formula in lazy mode.
+     *
+     * @return the number of refinements.
+     */
+    public int getRefinementCount() {
+        return this.refinements;
+    }
+
+    /**
+     * Returns the time spent encoding the formula.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getEncodeTime() {
+        return this.encode_time;
+    }
+
+    /**
+     * Returns the time spent solving the formula.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getSolveTime() {
+        return this.solve_time;
+    }
+
+    /**
+     * Returns the peak heap usage of the process while the horizon was tried.
+     *
+     * @return the heap usage in bytes, or -1 if it is not measured.
+     */
+    public long getHeap() {
+        return this.heap;
+    }
+
+    /**
+     * Writes the measures of a search to a file, as JSON if its name ends with .json and as CSV otherwise.
+     *
+     * @param metrics the measures of the horizons.
+     * @param file the file to write.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(List<HorizonMetrics> metrics, Path file) throws IOException {
+        boolean json = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            if (json) {
+                out.println("[");
+                for (int i = 0; i < metrics.size(); i++) {
+                    out.print(metrics.get(i).toJson());
+                    out.println(i + 1 < metrics.size() ? "," : "");
+                }
+                out.println("]");
+            } else {
+                out.println(CSV_HEADER);
+                for (HorizonMetrics horizon : metrics) {
+                    out.println(horizon.toCsv());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the measures of the horizon as a JSON object.
+     *
+     * @return the JSON text.
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "  {\"horizon\": %d, \"outcome\": \"%s\", \"steps\": %d, \"cumulative\": %b, "
+                        + "\"variables\": {\"fluent\": %d, \"action\": %d, \"auxiliary\": %d}, "
+                        + "\"clauses\": %s, \"added_clauses\": %s, \"goal_assumptions\": %d, \"refinements\": %d, "
+                        + "\"encode_ms\": %.3f, \"solve_ms\": %.3f, "
+                        + "\"solver\": {\"conflicts\": %d, \"decisions\": %d, \"propagations\": %d, "
+                        + "\"learned_clauses\": %d}, \"heap_bytes\": %s}",
+                this.horizon, this.outcome, this.steps, this.cumulative, this.fluent_variables, this.action_variables,
+                this.auxiliary_variables, to_json(this.clauses), to_json(this.added_clauses), this.goal_assumptions,
+                this.refinements, this.encode_time / 1e6, this.solve_time / 1e6, this.conflicts, this.decisions,
+                this.propagations, this.learned_clauses, this.heap == NOT_MEASURED ? "null" : Long.toString(this.heap));
+    }
+
+    /**
+     * Returns the measures of the horizon as a CSV row, in the order of the CSV header. The heap usage is left empty if
+     * it is not measured.
+     *
+     * @return the CSV row.
+     */
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%d,%s,%d,%b,%d,%d,%d,%s,%s,%d,%d,%.3f,%.3f,%d,%d,%d,%d,%s",
+                this.horizon, this.outcome, this.steps, this.cumulative, this.fluent_variables, this.action_variables,
+                this.auxiliary_variables, to_csv(this.clauses), to_csv(this.added_clauses), this.goal_assumptions,
+                this.refinements, this.encode_time / 1e6, this.solve_time / 1e6, this.conflicts, this.decisions,
+                this.propagations, this.learned_clauses, this.heap == NOT_MEASURED ? "" : Long.toString(this.heap));
+    }
+
+    /**
+     * Commits the event of the horizon to the flight recorder.
+     */
+    private void commit() {
+        this.event.end();
+        if (!this.event.shouldCommit()) {
+            return;
+        }
+        this.event.horizon = this.horizon;
+        this.event.outcome = this.outcome.name();
+        this.event.variables = this.getVariableCount();
+        this.event.steps = this.steps;
+        this.event.cumulative = this.cumulative;
+        this.event.clauses = 0;
+        for (int count : this.clauses) {
+            this.event.clauses += count;
+        }
+        this.event.addedClauses = 0;
+        for (int count : this.added_clauses) {
+            this.event.addedClauses += count;
+        }
+        this.event.goalAssumptions = this.goal_assumptions;
+        this.event.refinements = this.refinements;
+        this.event.initialStateClauses = this.getClauseCount(ClauseCategory.INITIAL_STATE);
+        this.event.goalClauses = this.getClauseCount(ClauseCategory.GOAL);
+        this.event.actionClauses = this.getClauseCount(ClauseCategory.ACTION);
+        this.event.frameClauses = this.getClauseCount(ClauseCategory.FRAME);
+        this.event.mutexClauses = this.getClauseCount(ClauseCategory.MUTEX);
+        this.event.invariantClauses = this.getClauseCount(ClauseCategory.INVARIANT);
+        this.event.encodeTime = this.encode_time;
+        this.event.solveTime = this.solve_time;
+        this.event.conflicts = this.conflicts;
+        this.event.decisions = this.decisions;
+        this.event.propagations = this.propagations;
+        this.event.learnedClauses = this.learned_clauses;
+        this.event.heap = this.heap;
+        this.event.commit();
+    }
+
+    /**
+     * Returns the counts of the clause categories as a JSON object.
+     *
+     * @param counts the count of each category.
+     * @return the JSON text.
+     */
+    private static String to_json(int[] counts) {
+        return String.format(Locale.ROOT, "{\"initial_state\": %d, \"goal\": %d, \"action\": %d, \"frame\": %d, "
+                        + "\"mutex\": %d, \"invariant\": %d}",
+                counts[ClauseCategory.INITIAL_STATE.ordinal()], counts[ClauseCategory.GOAL.ordinal()],
+                counts[ClauseCategory.ACTION.ordinal()], counts[ClauseCategory.FRAME.ordinal()],
+                counts[ClauseCategory.MUTEX.ordinal()], counts[ClauseCategory.INVARIANT.ordinal()]);
+    }
+
+    /**
+     * Returns the counts of the clause categories as CSV fields, in the order of the CSV header.
+     *
+     * @param counts the count of each category.
+     * @return the CSV fields.
+     */
+    private static String to_csv(int[] counts) {
+        return String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d",
+                counts[ClauseCategory.INITIAL_STATE.ordinal()], counts[ClauseCategory.GOAL.ordinal()],
+                counts[ClauseCategory.ACTION.ordinal()], counts[ClauseCategory.FRAME.ordinal()],
+                counts[ClauseCategory.MUTEX.ordinal()], counts[ClauseCategory.INVARIANT.ordinal()]);
+    }
+
+    /**
+     * Returns how much a counter of the solvers grew during the solving phase.
+     *
+     * @param after the counters of the solvers once the formula was solved.
+     * @param before the counters of the solvers before the formula was solved, or null if it had no solver before.
+     * @param name the name of the counter, 0 if a map does not hold it.
+     * @return the growth of the counter.
+     */
+    private static long delta(Map<String, Number> after, Map<String, Number> before, String name) {
+        long value = after.containsKey(name) ? after.get(name).longValue() : 0;
+        return before != null && before.containsKey(name) ? value - before.get(name).longValue() : value;
+    }
+}
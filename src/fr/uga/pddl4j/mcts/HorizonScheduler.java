@@ -0,0 +1,509 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class solves a window of horizons at the same time on a pool of threads, each horizon with its own SAT4J solver
+ * built from the same configuration.
+ * <p>
+ * The solvers cannot be paused, so the time is shared by running them in slices of a fixed duration, and by giving the
+ * next slice to the idle horizon that is the most behind its share. The horizon of rank i in the window
+ * (0 being the shortest horizon still open) is entitled to a share proportional to ratio^i: a ratio of 1 gives every
+ * horizon the same time, a lower ratio favours the short horizons.
+ * <p>
+ * Steps may stay empty, so a formula that is unsatisfiable for a horizon is unsatisfiable for every shorter horizon as
+ * well: proving a horizon unsatisfiable closes all the shorter ones. The first horizon proven satisfiable wins. The
+ * horizons closed or left behind are only marked as cancelled, so a solver still running stops at the end of its slice,
+ * and no slice runs past the deadline.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class HorizonScheduler {
+
+    /**
+     * The time a solver is allowed to run during each slice, in milliseconds.
+     */
+    private static final long SLICE_MILLISECONDS = 200;
+
+    /**
+     * The encoder of the problem, shared by all the horizons.
+     */
+    private final PlanningEncoder encoder;
+
+    /**
+     * The configuration of the solver of each horizon.
+     */
+    private final SolverConfiguration configuration;
+
+    /**
+     * The number of threads solving horizons.
+     */
+    private final int threads;
+
+    /**
+     * The number of horizons solved at the same time.
+     */
+    private final int window_size;
+
+    /**
+     * The ratio between the shares of time of two consecutive horizons.
+     */
+    private final double ratio;
+
+    /**
+     * Whether the heap usage of the process is part of the measures of each horizon.
+     */
+    private final boolean heap_measured;
+
+    /**
+     * The stream the outcomes of the horizons are printed to.
+     */
+    private final PrintStream output;
+
+    /**
+     * The horizons currently being solved, from the shortest to the longest.
+     */
+    private final List<HorizonRun> window = new ArrayList<>();
+
+    /**
+     * All the horizons added to the window by the last search.
+     */
+    private final List<HorizonRun> runs = new ArrayList<>();
+
+    /**
+     * The measures of the horizons encoded by the last search.
+     */
+    private final List<HorizonMetrics> metrics = new ArrayList<>();
+
+    /**
+     * The next horizon to add to the window.
+     */
+    private int next_horizon;
+
+    /**
+     * The longest horizon that may be added to the window.
+     */
+    private int last_horizon;
+
+    /**
+     * The time after which the search gives up, as given by System.nanoTime().
+     */
+    private volatile long deadline;
+
+    /**
+     * The horizon that was proven satisfiable, or null while none is.
+     */
+    private HorizonRun solution;
+
+    /**
+     * The first failure of a thread, if any.
+     */
+    private RuntimeException failure;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param encoder the encoder of the problem.
+     * @param configuration the configuration of the solver of each horizon.
+     * @param threads the number of threads solving horizons.
+     * @param window_size the number of horizons solved at the same time.
+     * @param ratio the ratio between the shares of time of two consecutive horizons, 1 for equal shares.
+     * @param heap_measured whether the heap usage of the process is part of the measures of each horizon.
+     * @param output the stream the outcomes of the horizons are printed to.
+     */
+    public HorizonScheduler(PlanningEncoder encoder, SolverConfiguration configuration, int threads, int window_size,
+                            double ratio, boolean heap_measured, PrintStream output) {
+        this.encoder = encoder;
+        this.configuration = configuration;
+        this.threads = Math.max(1, threads);
+        this.window_size = Math.max(1, window_size);
+        this.ratio = ratio;
+        this.heap_measured = heap_measured;
+        this.output = output;
+    }
+
+    /**
+     * Searches the horizons in the given range until one is proven satisfiable, all are proven unsatisfiable or the
+     * deadline has passed.
+     *
+     * @param first_horizon the shortest horizon to search.
+     * @param last_horizon the longest horizon to search.
+     * @param deadline the time after which the search gives up, as given by System.nanoTime().
+     * @return the satisfiable horizon and its model, or null if none was found in the range before the deadline.
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the solvers.
+     */
+    public Solution solve(int first_horizon, int last_horizon, long deadline) throws InterruptedException {
+        synchronized (this) {
+            this.window.clear();
+            this.runs.clear();
+            this.metrics.clear();
+            this.next_horizon = first_horizon;
+            this.last_horizon = last_horizon;
+            this.deadline = deadline;
+            this.solution = null;
+            this.failure = null;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        for (int i = 0; i < this.threads; i++) {
+            pool.execute(this::work);
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Waiting for the workers to find a solution or exhaust the horizons.
+            }
+        } catch (InterruptedException e) {
+            this.cancel_all();
+            pool.shutdownNow();
+            throw e;
+        }
+        synchronized (this) {
+            this.close_all();
+            if (this.solution != null) {
+                return new Solution(this.solution.horizon, this.solution.model);
+            }
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the measures of the horizons encoded by the last search, from the shortest to the longest. A horizon
+     * closed or left behind before its own answer is measured as timed out, and its solve time only counts its slices.
+     *
+     * @return the measures of the horizons.
+     */
+    public synchronized List<HorizonMetrics> getMetrics() {
+        return new ArrayList<>(this.metrics);
+    }
+
+    /**
+     * The loop of each thread: take the horizon most behind its share, run it for a slice, record the outcome.
+     */
+    private void work() {
+        while (true) {
+            HorizonRun run;
+            synchronized (this) {
+                run = this.next();
+                while (run == null) {
+                    if (this.is_finished()) {
+                        return;
+                    }
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime());
+                    try {
+                        this.wait(Math.max(1, remaining));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    run = this.next();
+                }
+                run.running = true;
+            }
+            try {
+                run.slice();
+            } catch (RuntimeException e) {
+                // A solver stopped because its horizon was closed is not worth reporting.
+                synchronized (this) {
+                    if (!run.cancelled && this.failure == null) {
+                        this.failure = e;
+                        this.cancel_all();
+                    }
+                }
+            }
+            synchronized (this) {
+                run.running = false;
+                this.record(run);
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the idle horizon that is the most behind its share of time, after filling the window.
+     *
+     * @return the horizon to run next, or null if none is idle.
+     */
+    private HorizonRun next() {
+        if (this.is_finished()) {
+            return null;
+        }
+        while (this.window.size() < this.window_size && this.next_horizon <= this.last_horizon) {
+            HorizonRun run = new HorizonRun(this.next_horizon++);
+            this.window.add(run);
+            this.runs.add(run);
+        }
+        HorizonRun best = null;
+        double best_time = Double.MAX_VALUE;
+        double share = 1;
+        for (HorizonRun run : this.window) {
+            if (!run.running && run.elapsed / share < best_time) {
+                best = run;
+                best_time = run.elapsed / share;
+            }
+            share *= this.ratio;
+        }
+        return best;
+    }
+
+    private boolean is_finished() {
+        return this.solution != null || this.failure != null || System.nanoTime() - this.deadline >= 0
+                || (this.window.isEmpty() && this.next_horizon > this.last_horizon);
+    }
+
+    /**
+     * Takes the outcome of a slice into account.
+     *
+     * @param run the horizon that was run.
+     */
+    private void record(HorizonRun run) {
+        if (run.outcome == Outcome.SATISFIABLE && this.solution == null) {
+            this.output.println("Horizon " + run.horizon + " is satisfiable.");
+            this.solution = run;
+            this.cancel_all();
+        } else if (run.outcome == Outcome.UNSATISFIABLE) {
+            this.output.println("Horizon " + run.horizon + " is unsatisfiable.");
+            Iterator<HorizonRun> iterator = this.window.iterator();
+            while (iterator.hasNext()) {
+                HorizonRun other = iterator.next();
+                if (other.horizon <= run.horizon) {
+                    other.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private void cancel_all() {
+        for (HorizonRun run : this.window) {
+            run.cancel();
+        }
+    }
+
+    /**
+     * Completes the measures of the horizons left without an answer and closes their solvers, once every thread is
+     * done.
+     */
+    private void close_all() {
+        this.runs.sort(Comparator.comparingInt(run -> run.horizon));
+        for (HorizonRun run : this.runs) {
+            if (run.metrics != null) {
+                if (run.metrics.getOutcome() == null) {
+                    run.metrics.completed(HorizonMetrics.Outcome.TIMEOUT, run.solver, run.solve_time);
+                }
+                this.metrics.add(run.metrics);
+            }
+            if (run.solver != null) {
+                run.solver.close();
+                run.solver = null;
+            }
+        }
+    }
+
+    /**
+     * The possible outcomes of a slice.
+     */
+    private enum Outcome {
+        SATISFIABLE, UNSATISFIABLE, UNKNOWN
+    }
+
+    /**
+     * A horizon of the window, with its own solver.
+     */
+    private final class HorizonRun {
+
+        /**
+         * The number of steps of the formula.
+         */
+        private final int horizon;
+
+        /**
+         * The solver of the formula, created once the formula of the horizon is fully encoded.
+         */
+        private SolverPortfolio solver;
+
+        /**
+         * The measures of the horizon, started when its formula is first encoded.
+         */
+        private HorizonMetrics metrics;
+
+        /**
+         * Whether a thread is currently running this horizon.
+         */
+        private boolean running = false;
+
+        /**
+         * Whether the horizon was closed, so that it is not run again.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * The time spent encoding and solving this horizon, in nanoseconds.
+         */
+        private long elapsed = 0;
+
+        /**
+         * The time spent solving the formula of this horizon, in nanoseconds.
+         */
+        private long solve_time = 0;
+
+        /**
+         * The outcome of the last slice.
+         */
+        private Outcome outcome = Outcome.UNKNOWN;
+
+        /**
+         * The model of the formula, once it is proven satisfiable.
+         */
+        private int[] model;
+
+        private HorizonRun(int horizon) {
+            this.horizon = horizon;
+        }
+
+        /**
+         * Runs the solver of the horizon for a slice, encoding the formula first if needed. The encoding is given up
+         * as soon as the horizon is cancelled or the deadline has passed.
+         */
+        private void slice() {
+            long start = System.nanoTime();
+            try {
+                if (this.solver == null && !this.encode()) {
+                    return;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(HorizonScheduler.this.deadline - System.nanoTime());
+                if (this.cancelled || remaining <= 0) {
+                    return;
+                }
+                long solve_start = System.nanoTime();
+                this.solver.setTimeoutMs(Math.min(SLICE_MILLISECONDS, remaining));
+                try {
+                    if (this.solver.isSatisfiable(VecInt.EMPTY)) {
+                        // A model of a lazy formula that violates some of the constraints left out only adds them,
+                        // and the horizon is solved again in its next slice.
+                        int[] candidate = this.solver.model();
+                        PlanningEncoder encoder = HorizonScheduler.this.encoder;
+                        if (encoder.refine(this.solver, encoder.decode(candidate, this.horizon), this.horizon) == 0) {
+                            this.model = candidate;
+                            this.outcome = Outcome.SATISFIABLE;
+                        } else {
+                            this.metrics.refined(this.solver);
+                        }
+                    } else {
+                        this.outcome = Outcome.UNSATISFIABLE;
+                    }
+                } catch (ContradictionException e) {
+                    this.outcome = Outcome.UNSATISFIABLE;
+                } catch (TimeoutException e) {
+                    this.outcome = Outcome.UNKNOWN;
+                } finally {
+                    this.solve_time += System.nanoTime() - solve_start;
+                }
+                if (this.outcome != Outcome.UNKNOWN) {
+                    this.metrics.completed(this.outcome == Outcome.SATISFIABLE
+                            ? HorizonMetrics.Outcome.SATISFIABLE
+                            : HorizonMetrics.Outcome.UNSATISFIABLE, this.solver, this.solve_time);
+                }
+            } finally {
+                this.elapsed += System.nanoTime() - start;
+                if (this.outcome == Outcome.UNSATISFIABLE && this.solver != null) {
+                    this.solver.close();
+                    this.solver = null;
+                }
+            }
+        }
+
+        /**
+         * Encodes the formula of the horizon into a new solver.
+         *
+         * @return whether the formula was fully encoded, false if it was given up or found to be contradictory.
+         */
+        private boolean encode() {
+            PlanningEncoder encoder = HorizonScheduler.this.encoder;
+            this.metrics = new HorizonMetrics(this.horizon, null, HorizonScheduler.this.heap_measured);
+            SolverPortfolio solver = new SolverPortfolio(
+                    Collections.singletonList(HorizonScheduler.this.configuration), encoder);
+            try {
+                encoder.encodeInitialState(solver);
+                for (int s = 0; s < this.horizon; s++) {
+                    if (this.cancelled || System.nanoTime() - HorizonScheduler.this.deadline >= 0) {
+                        solver.close();
+                        this.metrics = null;
+                        return false;
+                    }
+                    encoder.encodeStep(solver, s);
+                }
+                encoder.encodeGoal(solver, this.horizon);
+            } catch (ContradictionException e) {
+                this.metrics.completed(HorizonMetrics.Outcome.CONTRADICTION, solver);
+                solver.close();
+                this.outcome = Outcome.UNSATISFIABLE;
+                return false;
+            }
+            this.metrics.encoded(encoder, solver, solver, this.horizon, 0);
+            solver.setHorizon(this.horizon);
+            this.solver = solver;
+            return true;
+        }
+
+        /**
+         * Prevents the horizon from running again. A solver still running stops at the end of its slice.
+         */
+        private void cancel() {
+            this.cancelled = true;
+        }
+    }
+
+    /**
+     * A horizon proven satisfiable, with the model of its formula.
+     */
+    public static final class Solution {
+
+        /**
+         * The number of steps of the formula.
+         */
+        private final int horizon;
+
+        /**
+         * The model of the formula.
+         */
+        private final int[] model;
+
+        private Solution(int horizon, int[] model) {
+            this.horizon = horizon;
+            this.model = model;
+        }
+
+        /**
+         * Returns the number of steps of the satisfiable formula.
+         *
+         * @return the horizon.
+         */
+        public int getHorizon() {
+            return this.horizon;
+        }
+
+        /**
+         * Returns the model of the satisfiable formula.
+         *
+         * @return the model.
+         */
+        public int[] getModel() {
+            return this.model;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This enumeration lists the ways the planner shares its time between the horizons it searches, following the
+ * algorithms A, B and C of J. Rintanen's Madagascar planners.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum HorizonScheduling {
+
+    /**
+     * The horizons are tried one after the other, and a horizon is only tried once the previous one is proven
+     * unsatisfiable (algorithm A).
+     */
+    SEQUENTIAL(0),
+
+    /**
+     * A window of consecutive horizons is solved at the same time, and each of them gets the same share of the solving
+     * time (algorithm B).
+     */
+    INTERLEAVED(1),
+
+    /**
+     * A window of consecutive horizons is solved at the same time, and each horizon gets a constant fraction of the
+     * share of the previous one, so that short horizons get most of the time without blocking the longer ones
+     * (algorithm C).
+     */
+    GEOMETRIC(0.8);
+
+    /**
+     * The ratio between the shares of time of two consecutive horizons of the window.
+     */
+    private final double ratio;
+
+    HorizonScheduling(double ratio) {
+        this.ratio = ratio;
+    }
+
+    /**
+     * Returns the ratio between the shares of time of two consecutive horizons of the window. It is not used by the
+     * sequential scheduling.
+     *
+     * @return the ratio of the scheduling.
+     */
+    public double getRatio() {
+        return this.ratio;
+    }
+}
@@ -0,0 +1,127 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This class follows a horizon strategy over a range of horizons: it tells the planner which horizon to try next from
+ * the outcomes of the previous attempts.
+ * <p>
+ * Steps may stay empty, so a plan found for a horizon is a plan for every longer horizon, and a horizon without a plan
+ * has no shorter horizon with a plan. A horizon whose solver reached its timeout is handled as a horizon without a plan:
+ * the search moves on instead of waiting for it, at the risk of missing a shorter plan.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class HorizonSearch {
+
+    /**
+     * The order in which the horizons are tried.
+     */
+    private final HorizonStrategy strategy;
+
+    /**
+     * The shortest horizon of the search.
+     */
+    private final int first_horizon;
+
+    /**
+     * The longest horizon of the search.
+     */
+    private final int last_horizon;
+
+    /**
+     * The step of the linear strategy.
+     */
+    private final int step;
+
+    /**
+     * The last horizon tried, or 0 before the first attempt.
+     */
+    private int current = 0;
+
+    /**
+     * The longest horizon known to have no plan, or the horizon before the first one.
+     */
+    private int lower;
+
+    /**
+     * The shortest horizon known to have a plan, or 0 while none is known.
+     */
+    private int upper = 0;
+
+    /**
+     * Creates a search over the given range of horizons.
+     *
+     * @param strategy the order in which the horizons are tried.
+     * @param first_horizon the shortest horizon of the search.
+     * @param last_horizon the longest horizon of the search.
+     * @param step the step of the linear strategy.
+     */
+    public HorizonSearch(HorizonStrategy strategy, int first_horizon, int last_horizon, int step) {
+        this.strategy = strategy;
+        this.first_horizon = Math.max(1, first_horizon);
+        this.last_horizon = last_horizon;
+        this.step = Math.max(1, step);
+        this.lower = this.first_horizon - 1;
+    }
+
+    /**
+     * Returns the next horizon to try.
+     *
+     * @return the horizon, or 0 if the search is over.
+     */
+    public int next() {
+        if (this.upper > 0) {
+            if (!this.strategy.refines() || this.upper - this.lower <= 1) {
+                return 0;
+            }
+            this.current = (this.lower + this.upper) >>> 1;
+        } else if (this.current == 0) {
+            this.current = this.first_horizon <= this.last_horizon ? this.first_horizon : 0;
+        } else if (this.current >= this.last_horizon) {
+            return 0;
+        } else {
+            this.current = Math.min(this.strategy.advance(this.current, this.step), this.last_horizon);
+        }
+        return this.current;
+    }
+
+    /**
+     * Records the outcome of an attempt.
+     *
+     * @param horizon the horizon that was tried.
+     * @param satisfiable whether a plan was found for the horizon.
+     */
+    public void report(int horizon, boolean satisfiable) {
+        if (satisfiable) {
+            this.upper = this.upper == 0 ? horizon : Math.min(this.upper, horizon);
+        } else {
+            this.lower = Math.max(this.lower, horizon);
+        }
+    }
+
+    /**
+     * Returns an upper bound on the number of attempts the search may still make, used to share the remaining time
+     * between them.
+     *
+     * @return the number of attempts left, at least 1.
+     */
+    public int getRemainingAttempts() {
+        if (this.upper > 0) {
+            return Math.max(1, log2(this.upper - this.lower));
+        }
+        int attempts = 0;
+        int horizon = this.current;
+        while (horizon < this.last_horizon) {
+            horizon = horizon == 0 ? this.first_horizon : this.strategy.advance(horizon, this.step);
+            attempts++;
+        }
+        if (this.strategy.refines()) {
+            attempts += log2(this.last_horizon - this.lower);
+        }
+        return Math.max(1, attempts);
+    }
+
+    private static int log2(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(0, value - 1));
+    }
+}
@@ -0,0 +1,66 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This enumeration lists the orders in which the planner tries the horizons when they are searched one at a time.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum HorizonStrategy {
+
+    /**
+     * The horizons are tried in increasing order with a constant step, and the first satisfiable one gives the plan.
+     * With a step of 1, the plan found is the shortest one in number of steps.
+     */
+    LINEAR {
+        @Override
+        int advance(int horizon, int step) {
+            return horizon + step;
+        }
+    },
+
+    /**
+     * The horizon is doubled after each attempt, and the first satisfiable one gives the plan. Long plans are reached
+     * after few attempts, but the plan found may be up to twice as long as needed.
+     */
+    GEOMETRIC {
+        @Override
+        int advance(int horizon, int step) {
+            return horizon * 2;
+        }
+    },
+
+    /**
+     * The horizon is doubled after each attempt until one is satisfiable, then a binary search between that horizon
+     * and the last one without a plan finds the shortest satisfiable horizon.
+     */
+    EXPONENTIAL_BINARY {
+        @Override
+        int advance(int horizon, int step) {
+            return horizon * 2;
+        }
+
+        @Override
+        boolean refines() {
+            return true;
+        }
+    };
+
+    /**
+     * Returns the horizon to try after a horizon where no plan was found.
+     *
+     * @param horizon the horizon that was tried.
+     * @param step the step of the linear strategy.
+     * @return the next horizon, before it is bounded by the longest horizon of the search.
+     */
+    abstract int advance(int horizon, int step);
+
+    /**
+     * Returns whether the strategy keeps searching shorter horizons once a satisfiable one was found.
+     *
+     * @return whether the strategy refines its first plan.
+     */
+    boolean refines() {
+        return false;
+    }
+}
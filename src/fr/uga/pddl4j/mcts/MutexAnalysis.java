@@ -0,0 +1,240 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This class computes the pairs of fluents that can never be true together in a reachable state, with the h^2
+ * reachability analysis: a pair is reachable if both fluents are true in the initial state, or if an action whose
+ * preconditions are pairwise reachable adds both fluents, or adds one of them while keeping the other one, which must
+ * be reachable together with every precondition of the action. The pairs that are never reached are mutexes, such as
+ * a crate being in two places or a hoist being both available and lifting.
+ * <p>
+ * The analysis only looks at the positive preconditions and the unconditional effects of the actions. Ignoring the
+ * negative preconditions only makes more pairs reachable, so every mutex found holds in every reachable state, and can
+ * be added to the formula of every step without removing any plan.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class MutexAnalysis {
+
+    /**
+     * The number of fluents of the problem.
+     */
+    private final int fluent_count;
+
+    /**
+     * The reachable pairs, as one bit set per fluent. A fluent is reachable if it forms a reachable pair with itself.
+     */
+    private final long[][] pairs;
+
+    /**
+     * The pairs of fluents that are never true together, one after the other, each pair being stored once as its
+     * smallest fluent followed by its largest one.
+     */
+    private final int[] mutexes;
+
+    /**
+     * Analyses the given compiled problem.
+     *
+     * @param problem the compiled problem to analyse.
+     */
+    public MutexAnalysis(CompiledProblem problem) {
+        this.fluent_count = problem.getFluentCount();
+        int words = (this.fluent_count + 63) >>> 6;
+        this.pairs = new long[this.fluent_count][words];
+
+        long[] initial_state = new long[words];
+        for (int f = 0; f < this.fluent_count; f++) {
+            if (problem.isInitiallyTrue(f)) {
+                initial_state[f >>> 6] |= 1L << f;
+            }
+        }
+        for (int f = 0; f < this.fluent_count; f++) {
+            if (problem.isInitiallyTrue(f)) {
+                System.arraycopy(initial_state, 0, this.pairs[f], 0, words);
+            }
+        }
+
+        // The fluents that are reachable together with every precondition of an action, then kept by the action.
+        long[] kept = new long[words];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int a = 0; a < problem.getActionCount(); a++) {
+                int[] preconditions = problem.getPreconditions(a);
+                if (!this.is_applicable(preconditions)) {
+                    continue;
+                }
+                boolean first = true;
+                for (int precondition : preconditions) {
+                    if (precondition > 0) {
+                        long[] row = this.pairs[precondition - 1];
+                        for (int w = 0; w < words; w++) {
+                            kept[w] = first ? row[w] : kept[w] & row[w];
+                        }
+                        first = false;
+                    }
+                }
+                if (first) {
+                    // Without positive precondition, every reachable fluent is compatible with the action.
+                    for (int w = 0; w < words; w++) {
+                        kept[w] = 0;
+                    }
+                    for (int f = 0; f < this.fluent_count; f++) {
+                        if (this.is_reachable(f)) {
+                            kept[f >>> 6] |= 1L << f;
+                        }
+                    }
+                }
+                int[] effects = problem.getEffects(a);
+                for (int effect : effects) {
+                    int f = Math.abs(effect) - 1;
+                    kept[f >>> 6] &= ~(1L << f);
+                }
+                for (int effect : effects) {
+                    if (effect < 0) {
+                        continue;
+                    }
+                    for (int other : effects) {
+                        if (other > 0) {
+                            changed |= this.add_pair(effect - 1, other - 1);
+                        }
+                    }
+                    changed |= this.add_pairs(effect - 1, kept);
+                }
+            }
+        }
+
+        int count = 0;
+        for (int f = 0; f < this.fluent_count; f++) {
+            for (int g = f + 1; g < this.fluent_count; g++) {
+                if (this.isMutex(f, g)) {
+                    count++;
+                }
+            }
+        }
+        this.mutexes = new int[count * 2];
+        int i = 0;
+        for (int f = 0; f < this.fluent_count; f++) {
+            for (int g = f + 1; g < this.fluent_count; g++) {
+                if (this.isMutex(f, g)) {
+                    this.mutexes[i++] = f;
+                    this.mutexes[i++] = g;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a fluent can be true in a reachable state.
+     *
+     * @param fluent the position of the fluent in the fluent list.
+     * @return false if the fluent is never true.
+     */
+    public boolean isReachable(int fluent) {
+        return this.is_reachable(fluent);
+    }
+
+    /**
+     * Returns whether two reachable fluents can never be true together. Fluents that are never true are not mutexes of
+     * anything, since the reachability analysis already fixes them.
+     *
+     * @param fluent1 the position of the first fluent in the fluent list.
+     * @param fluent2 the position of the second fluent in the fluent list.
+     * @return true if the fluents are both reachable but never together.
+     */
+    public boolean isMutex(int fluent1, int fluent2) {
+        return fluent1 != fluent2 && this.is_reachable(fluent1) && this.is_reachable(fluent2)
+                && !this.has_pair(fluent1, fluent2);
+    }
+
+    /**
+     * Returns whether an action can be applied in some reachable state, as far as the pairs of its positive
+     * preconditions tell.
+     *
+     * @param preconditions the signed positions of the fluents of the preconditions of the action.
+     * @return false if two preconditions of the action are never true together, or one is never true.
+     */
+    public boolean isApplicable(int[] preconditions) {
+        return this.is_applicable(preconditions);
+    }
+
+    /**
+     * Returns the pairs of fluents that are never true together.
+     *
+     * @return the positions of the fluents of each pair, one pair after the other, which must not be modified.
+     */
+    public int[] getMutexes() {
+        return this.mutexes;
+    }
+
+    /**
+     * Returns the number of pairs of fluents that are never true together.
+     *
+     * @return the number of mutexes.
+     */
+    public int getMutexCount() {
+        return this.mutexes.length / 2;
+    }
+
+    /**
+     * Returns whether the positive preconditions of an action are all reachable and pairwise reachable.
+     *
+     * @param preconditions the signed positions of the fluents of the preconditions.
+     * @return true if the action can be applied in the relaxation.
+     */
+    private boolean is_applicable(int[] preconditions) {
+        for (int i = 0; i < preconditions.length; i++) {
+            if (preconditions[i] < 0) {
+                continue;
+            }
+            for (int j = i; j < preconditions.length; j++) {
+                if (preconditions[j] > 0 && !this.has_pair(preconditions[i] - 1, preconditions[j] - 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean is_reachable(int fluent) {
+        return this.has_pair(fluent, fluent);
+    }
+
+    private boolean has_pair(int fluent1, int fluent2) {
+        return (this.pairs[fluent1][fluent2 >>> 6] & (1L << fluent2)) != 0;
+    }
+
+    private boolean add_pair(int fluent1, int fluent2) {
+        if (this.has_pair(fluent1, fluent2)) {
+            return false;
+        }
+        this.pairs[fluent1][fluent2 >>> 6] |= 1L << fluent2;
+        this.pairs[fluent2][fluent1 >>> 6] |= 1L << fluent1;
+        return true;
+    }
+
+    /**
+     * Makes a fluent reachable together with every fluent of a set.
+     *
+     * @param fluent the position of the fluent.
+     * @param others the bit set of the other fluents.
+     * @return true if a pair was not reachable before.
+     */
+    private boolean add_pairs(int fluent, long[] others) {
+        long[] row = this.pairs[fluent];
+        boolean changed = false;
+        for (int w = 0; w < row.length; w++) {
+            long added = others[w] & ~row[w];
+            if (added == 0) {
+                continue;
+            }
+            row[w] |= added;
+            changed = true;
+            for (long bits = added; bits != 0; bits &= bits - 1) {
+                int other = (w << 6) + Long.numberOfTrailingZeros(bits);
+                this.pairs[other][fluent >>> 6] |= 1L << fluent;
+            }
+        }
+        return changed;
+    }
+}
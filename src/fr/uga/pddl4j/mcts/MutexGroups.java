@@ -0,0 +1,223 @@
+package fr.uga.pddl4j.mcts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class finds groups of fluents of which exactly one is true in every reachable state, so that each group can be
+ * described as a single multi-valued variable, in the way of the SAS+ formalism.
+ * <p>
+ * A group starts from a fluent of the initial state, such as a crate being at a place. As long as an action removes a
+ * fluent of the group without adding another one, one of the fluents it adds that is a mutex of the whole group is
+ * taken in, such as the crate being lifted by a hoist, the other fluents being tried in turn if the group cannot be
+ * completed with it. The group is kept if every action that removes one of its
+ * fluents adds another one, since exactly one of its fluents is then true in the initial state and after every action.
+ * The actions that cannot be applied in any reachable state, as found by the {@link MutexAnalysis}, are ignored.
+ * <p>
+ * The same fluent can be part of several groups, such as a hoist lifting a crate, which is both a place of the crate
+ * and a state of the hoist.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class MutexGroups {
+
+    /**
+     * The number of fluents tried when growing a group from one fluent, before the fluent is left out of any group.
+     */
+    private static final int MAX_ATTEMPTS = 256;
+
+    /**
+     * The fluents of each group.
+     */
+    private final int[][] groups;
+
+    /**
+     * Whether each fluent is part of a group.
+     */
+    private final boolean[] grouped;
+
+    /**
+     * The pairs of fluents that are part of the same group, as one bit set per fluent.
+     */
+    private final long[][] together;
+
+    /**
+     * Finds the groups of a compiled problem.
+     *
+     * @param problem the compiled problem.
+     * @param mutexes the pairs of fluents that are never true together in the problem.
+     */
+    public MutexGroups(CompiledProblem problem, MutexAnalysis mutexes) {
+        int fluent_count = problem.getFluentCount();
+        boolean[] applicable = new boolean[problem.getActionCount()];
+        for (int a = 0; a < applicable.length; a++) {
+            applicable[a] = mutexes.isApplicable(problem.getPreconditions(a));
+        }
+        this.grouped = new boolean[fluent_count];
+        this.together = new long[fluent_count][];
+        List<int[]> found = new ArrayList<>();
+        for (int seed = 0; seed < fluent_count; seed++) {
+            if (problem.isInitiallyTrue(seed) && !this.grouped[seed] && mutexes.isReachable(seed)) {
+                int[] group = grow(problem, mutexes, applicable, seed);
+                if (group != null && group.length > 1) {
+                    found.add(group);
+                    for (int fluent : group) {
+                        this.grouped[fluent] = true;
+                    }
+                }
+            }
+        }
+        this.groups = found.toArray(new int[0][]);
+        int words = (fluent_count + 63) >>> 6;
+        for (int[] group : this.groups) {
+            for (int fluent : group) {
+                if (this.together[fluent] == null) {
+                    this.together[fluent] = new long[words];
+                }
+                for (int other : group) {
+                    this.together[fluent][other >>> 6] |= 1L << other;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows a group from a fluent of the initial state until every action removing one of its fluents adds another.
+     *
+     * @param problem the compiled problem.
+     * @param mutexes the pairs of fluents that are never true together in the problem.
+     * @param applicable whether each action can be applied in a reachable state.
+     * @param seed the fluent of the initial state the group starts from.
+     * @return the fluents of the group, or null if no such group contains the seed.
+     */
+    private static int[] grow(CompiledProblem problem, MutexAnalysis mutexes, boolean[] applicable, int seed) {
+        List<Integer> members = new ArrayList<>();
+        boolean[] member = new boolean[problem.getFluentCount()];
+        members.add(seed);
+        member[seed] = true;
+        if (!complete(problem, mutexes, applicable, members, member, 0, new int[] {MAX_ATTEMPTS})) {
+            return null;
+        }
+        int[] group = new int[members.size()];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = members.get(i);
+        }
+        Arrays.sort(group);
+        return group;
+    }
+
+    /**
+     * Completes a group, trying each fluent an unbalanced action adds in turn, and backtracking when the group cannot
+     * be completed with it, such as a crate being on another crate rather than at the place of that crate.
+     *
+     * @param problem the compiled problem.
+     * @param mutexes the pairs of fluents that are never true together in the problem.
+     * @param applicable whether each action can be applied in a reachable state.
+     * @param members the fluents of the group, completed in place.
+     * @param member whether each fluent is part of the group, updated in place.
+     * @param checked the number of members whose deleting actions were already found to add a member.
+     * @param attempts the number of fluents that can still be tried, shared by the whole search.
+     * @return true if the group was completed, false if it was left as given.
+     */
+    private static boolean complete(CompiledProblem problem, MutexAnalysis mutexes, boolean[] applicable,
+                                    List<Integer> members, boolean[] member, int checked, int[] attempts) {
+        // An action that adds a fluent of the group keeps doing so as the group grows, so each fluent is checked once.
+        for (int i = checked; i < members.size(); i++) {
+            for (int action : problem.getDeleters(members.get(i))) {
+                if (!applicable[action] || adds_member(problem.getEffects(action), member)) {
+                    continue;
+                }
+                for (int effect : problem.getEffects(action)) {
+                    if (effect <= 0 || !is_compatible(problem, mutexes, members, effect - 1) || attempts[0]-- <= 0) {
+                        continue;
+                    }
+                    int size = members.size();
+                    members.add(effect - 1);
+                    member[effect - 1] = true;
+                    if (complete(problem, mutexes, applicable, members, member, i, attempts)) {
+                        return true;
+                    }
+                    while (members.size() > size) {
+                        member[members.remove(members.size() - 1)] = false;
+                    }
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean adds_member(int[] effects, boolean[] member) {
+        for (int effect : effects) {
+            if (effect > 0 && member[effect - 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a fluent can join a group: it is not in the initial state, and never true together with any
+     * fluent of the group.
+     *
+     * @param problem the compiled problem.
+     * @param mutexes the pairs of fluents that are never true together in the problem.
+     * @param members the fluents of the group.
+     * @param fluent the fluent to check.
+     * @return true if the fluent can join the group.
+     */
+    private static boolean is_compatible(CompiledProblem problem, MutexAnalysis mutexes, List<Integer> members,
+                                         int fluent) {
+        if (problem.isInitiallyTrue(fluent)) {
+            return false;
+        }
+        for (int member : members) {
+            if (!mutexes.isMutex(member, fluent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the groups found.
+     *
+     * @return the fluents of each group, sorted, which must not be modified.
+     */
+    public int[][] getGroups() {
+        return this.groups;
+    }
+
+    /**
+     * Returns the number of groups found.
+     *
+     * @return the number of groups.
+     */
+    public int getGroupCount() {
+        return this.groups.length;
+    }
+
+    /**
+     * Returns whether a fluent is part of a group, so that exactly one fluent of its group is true at every step.
+     *
+     * @param fluent the position of the fluent in the fluent list.
+     * @return true if the fluent is part of a group.
+     */
+    public boolean isGrouped(int fluent) {
+        return this.grouped[fluent];
+    }
+
+    /**
+     * Returns whether two different fluents are part of the same group.
+     *
+     * @param fluent1 the position of the first fluent in the fluent list.
+     * @param fluent2 the position of the second fluent in the fluent list.
+     * @return true if some group contains both fluents.
+     */
+    public boolean isTogether(int fluent1, int fluent2) {
+        return fluent1 != fluent2 && this.together[fluent1] != null
+                && (this.together[fluent1][fluent2 >>> 6] & (1L << fluent2)) != 0;
+    }
+}
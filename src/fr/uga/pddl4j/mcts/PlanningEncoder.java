@@ -0,0 +1,750 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.problem.Problem;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVecInt;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * This class translates a planning problem into CNF formulae, one step at a time, and sends the clauses to a
+ * {@link ClauseSink}.
+ * <p>
+ * The variables of a step are laid out as all the fluents, then all the actions, then the auxiliary variables of the
+ * at-most-one constraint between the actions if the steps are sequential, so that the variable of a given fluent or
+ * action at step s is the one of step 0 shifted by s times the number of variables per step. The last step of a formula
+ * has no next step to transition to, so only its fluents are used.
+ * <p>
+ * Once the relaxed planning graph has reached its fixpoint, every transition has the same clauses up to that shift.
+ * They are built once into a {@link StepTemplate} and stamped out for every later step; only the first steps, where
+ * reachability still fixes more variables, are built one by one.
+ * <p>
+ * The fluent mutexes of a {@link MutexAnalysis} can be added to the state of every step as redundant binary clauses,
+ * so that the solver doesn't have to learn them again through conflicts at every horizon.
+ * <p>
+ * The fluents of the {@link MutexGroups} can be described as multi-valued variables: exactly one fluent of each group
+ * is true at every step, stated by one clause and one cardinality constraint. A fluent of a group can then only become
+ * true if another one is removed by an action, which adds it or another fluent of the group, so its frame axiom for
+ * becoming true, the deletions implied by an addition to the same group and the mutexes within the group are left out.
+ * <p>
+ * In lazy mode, the disjunctions between actions, the fluent mutexes and the frame axioms of the fluents that are not
+ * part of the goal are left out of the formulae. They are only added by {@link #refine(ClauseSink, boolean[], int)}
+ * when a model of the relaxed formula violates them, until a model describes a valid plan.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class PlanningEncoder {
+
+    /**
+     * The grounded problem, as integer arrays.
+     */
+    private final CompiledProblem problem;
+
+    /**
+     * The number of fluents of the problem.
+     */
+    private final int fluent_count;
+
+    /**
+     * The number of actions of the problem.
+     */
+    private final int action_count;
+
+    /**
+     * The encoding of the constraint stating that at most one action is taken at each step.
+     */
+    private final AtMostOneEncoding at_most_one;
+
+    /**
+     * The number of auxiliary variables used by the at-most-one constraint of each step.
+     */
+    private final int auxiliary_count;
+
+    /**
+     * The way actions can be taken at the same step.
+     */
+    private final StepSemantics semantics;
+
+    /**
+     * The relaxed planning graph used to fix the variables that cannot change, or null if nothing is pruned.
+     */
+    private final ReachabilityAnalysis reachability;
+
+    /**
+     * The pairs of fluents that are never true together, added to every step, or null if no invariant is added.
+     */
+    private final MutexAnalysis mutexes;
+
+    /**
+     * The groups of fluents described as multi-valued variables, or null if every fluent is described on its own.
+     */
+    private final MutexGroups groups;
+
+    /**
+     * Whether the action disjunctions, the fluent mutexes and most frame axioms are only added once violated.
+     */
+    private final boolean lazy;
+
+    /**
+     * Whether the frame axioms of each fluent are added to every step in lazy mode, which is the case of the fluents
+     * of the goal.
+     */
+    private final boolean[] eager_frames;
+
+    /**
+     * The actions each action cannot be taken with at the same step, sorted, or null if the disjunctions are not added
+     * lazily under parallel semantics.
+     */
+    private final int[][] interfering;
+
+    /**
+     * The pairs of actions that cannot be taken at the same step under parallel semantics, one after the other.
+     */
+    private final int[] interferences;
+
+    /**
+     * The first step whose transition is stamped out from the template.
+     */
+    private final int template_step;
+
+    /**
+     * The clauses of the transitions from the template step on, with the variables of step 0.
+     */
+    private final StepTemplate template;
+
+    /**
+     * Creates an encoder for the given problem.
+     *
+     * @param problem the problem to encode.
+     * @param at_most_one the encoding of the constraint stating that at most one action is taken at each step, only
+     *                    used by sequential semantics.
+     * @param semantics the way actions can be taken at the same step.
+     * @param reachability the relaxed planning graph used to fix the variables that cannot change, or null.
+     */
+    public PlanningEncoder(Problem problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                           ReachabilityAnalysis reachability) {
+        this(new CompiledProblem(problem), at_most_one, semantics, reachability);
+    }
+
+    /**
+     * Creates an encoder for the given compiled problem.
+     *
+     * @param problem the compiled problem to encode.
+     * @param at_most_one the encoding of the constraint stating that at most one action is taken at each step, only
+     *                    used by sequential semantics.
+     * @param semantics the way actions can be taken at the same step.
+     * @param reachability the relaxed planning graph used to fix the variables that cannot change, or null.
+     */
+    public PlanningEncoder(CompiledProblem problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                           ReachabilityAnalysis reachability) {
+        this(problem, at_most_one, semantics, reachability, null, null, false, null);
+    }
+
+    /**
+     * Creates an encoder for the given compiled problem, adding the fluent mutexes of the problem to every step.
+     *
+     * @param problem the compiled problem to encode.
+     * @param at_most_one the encoding of the constraint stating that at most one action is taken at each step, only
+     *                    used by sequential semantics.
+     * @param semantics the way actions can be taken at the same step.
+     * @param reachability the relaxed planning graph used to fix the variables that cannot change, or null.
+     * @param mutexes the pairs of fluents that are never true together, or null.
+     */
+    public PlanningEncoder(CompiledProblem problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                           ReachabilityAnalysis reachability, MutexAnalysis mutexes) {
+        this(problem, at_most_one, semantics, reachability, mutexes, null, false, null);
+    }
+
+    /**
+     * Creates an encoder for the given compiled problem, adding the fluent mutexes of the problem to every step and
+     * describing the given groups of fluents as multi-valued variables.
+     *
+     * @param problem the compiled problem to encode.
+     * @param at_most_one the encoding of the constraint stating that at most one action is taken at each step, only
+     *                    used by sequential semantics.
+     * @param semantics the way actions can be taken at the same step.
+     * @param reachability the relaxed planning graph used to fix the variables that cannot change, or null.
+     * @param mutexes the pairs of fluents that are never true together, or null.
+     * @param groups the groups of fluents of which exactly one is true in every reachable state, or null.
+     */
+    public PlanningEncoder(CompiledProblem problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                           ReachabilityAnalysis reachability, MutexAnalysis mutexes, MutexGroups groups) {
+        this(problem, at_most_one, semantics, reachability, mutexes, groups, false, null);
+    }
+
+    /**
+     * Creates an encoder for the given compiled problem, which may leave the constraints that are rarely violated out of
+     * the formulae until {@link #refine(ClauseSink, boolean[], int)} finds them violated.
+     *
+     * @param problem the compiled problem to encode.
+     * @param at_most_one the encoding of the constraint stating that at most one action is taken at each step, only
+     *                    used by sequential semantics.
+     * @param semantics the way actions can be taken at the same step.
+     * @param reachability the relaxed planning graph used to fix the variables that cannot change, or null.
+     * @param mutexes the pairs of fluents that are never true together, or null.
+     * @param groups the groups of fluents of which exactly one is true in every reachable state, or null.
+     * @param lazy whether the action disjunctions, the fluent mutexes and most frame axioms are only added once
+     *             violated.
+     */
+    public PlanningEncoder(CompiledProblem problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                           ReachabilityAnalysis reachability, MutexAnalysis mutexes, MutexGroups groups,
+                           boolean lazy) {
+        this(problem, at_most_one, semantics, reachability, mutexes, groups, lazy, null);
+    }
+
+    /**
+     * Creates an encoder for the given compiled problem, reusing the template of an earlier encoder of the same problem
+     * with the same settings, as read back from an {@link EncodingCache}.
+     *
+     * @param problem the compiled problem to encode.
+     * @param at_most_one the encoding of the constraint stating that at most one action is taken at each step, only
+     *                    used by sequential semantics.
+     * @param semantics the way actions can be taken at the same step.
+     * @param reachability the relaxed planning graph used to fix the variables that cannot change, or null.
+     * @param mutexes the pairs of fluents that are never true together, or null.
+     * @param groups the groups of fluents of which exactly one is true in every reachable state, or null.
+     * @param lazy whether the action disjunctions, the fluent mutexes and most frame axioms are only added once
+     *             violated.
+     * @param template the template of the transitions from the fixpoint layer on, or null to build it.
+     */
+    PlanningEncoder(CompiledProblem problem, AtMostOneEncoding at_most_one, StepSemantics semantics,
+                    ReachabilityAnalysis reachability, MutexAnalysis mutexes, MutexGroups groups, boolean lazy,
+                    StepTemplate template) {
+        this.problem = problem;
+        this.fluent_count = problem.getFluentCount();
+        this.action_count = problem.getActionCount();
+        this.at_most_one = at_most_one;
+        this.semantics = semantics;
+        this.reachability = reachability;
+        this.mutexes = mutexes;
+        this.groups = groups;
+        this.lazy = lazy;
+        this.auxiliary_count = semantics == StepSemantics.SEQUENTIAL && !lazy
+                ? at_most_one.getAuxiliaryVariables(this.action_count)
+                : 0;
+        this.interferences = semantics == StepSemantics.SEQUENTIAL ? new int[0] : this.compute_interferences();
+        this.eager_frames = new boolean[this.fluent_count];
+        for (int goal : problem.getGoal()) {
+            this.eager_frames[Math.abs(goal) - 1] = true;
+        }
+        this.interfering = lazy && semantics != StepSemantics.SEQUENTIAL ? this.index_interferences() : null;
+        this.template_step = reachability == null ? 0 : reachability.getFixpointLayer();
+        if (template != null) {
+            this.template = template;
+            return;
+        }
+        this.template = new StepTemplate();
+        try {
+            this.build_step(this.template, 0, this.template_step);
+        } catch (ContradictionException e) {
+            throw new IllegalStateException("A template cannot be contradictory", e);
+        }
+    }
+
+    /**
+     * Lists the pairs of actions that cannot be taken at the same step. An action disables another one if one of its
+     * effects contradicts one of the preconditions of the other. Under forall-step semantics, two actions interfere if
+     * either disables the other. Under exists-step semantics, the actions of a step are executed in the order of the
+     * action list, so two actions only interfere if the first one disables the second one.
+     *
+     * @return the interfering pairs, flattened.
+     */
+    private int[] compute_interferences() {
+
+        // Each pair is stored once, as its smallest action followed by its largest one.
+        Set<Long> pairs = new LinkedHashSet<>();
+        for (int fluent = 0; fluent < this.fluent_count; fluent++) {
+            for (int disabler : this.problem.getDeleters(fluent)) {
+                for (int disabled : this.problem.getPositiveRequirers(fluent)) {
+                    this.add_interference(pairs, disabler, disabled);
+                }
+            }
+            for (int disabler : this.problem.getAdders(fluent)) {
+                for (int disabled : this.problem.getNegativeRequirers(fluent)) {
+                    this.add_interference(pairs, disabler, disabled);
+                }
+            }
+        }
+        int[] interferences = new int[pairs.size() * 2];
+        int i = 0;
+        for (long pair : pairs) {
+            interferences[i++] = (int) (pair >>> 32);
+            interferences[i++] = (int) pair;
+        }
+        return interferences;
+    }
+
+    /**
+     * Lists the actions each action interferes with, so that the pairs of a model can be checked quickly.
+     *
+     * @return the sorted interfering actions of each action.
+     */
+    private int[][] index_interferences() {
+        int[] counts = new int[this.action_count];
+        for (int interference : this.interferences) {
+            counts[interference]++;
+        }
+        int[][] index = new int[this.action_count][];
+        for (int a = 0; a < this.action_count; a++) {
+            index[a] = new int[counts[a]];
+            counts[a] = 0;
+        }
+        for (int i = 0; i < this.interferences.length; i += 2) {
+            int first = this.interferences[i];
+            int second = this.interferences[i + 1];
+            index[first][counts[first]++] = second;
+            index[second][counts[second]++] = first;
+        }
+        for (int[] actions : index) {
+            Arrays.sort(actions);
+        }
+        return index;
+    }
+
+    private void add_interference(Set<Long> pairs, int disabler, int disabled) {
+        if (disabler == disabled || (this.semantics == StepSemantics.EXISTS_STEP && disabler > disabled)) {
+            return;
+        }
+        pairs.add(((long) Math.min(disabler, disabled) << 32) | Math.max(disabler, disabled));
+    }
+
+    /**
+     * Returns the compiled problem the formulae describe.
+     *
+     * @return the compiled problem.
+     */
+    public CompiledProblem getProblem() {
+        return this.problem;
+    }
+
+    /**
+     * Returns the template of the transitions from the fixpoint layer of the planning graph on.
+     *
+     * @return the template, with the variables of step 0.
+     */
+    StepTemplate getTemplate() {
+        return this.template;
+    }
+
+    /**
+     * Returns the number of variables used by each step, except the last one.
+     *
+     * @return the stride between the variables of two consecutive steps.
+     */
+    public int getVariablesPerStep() {
+        return this.fluent_count + this.action_count + this.auxiliary_count;
+    }
+
+    /**
+     * Returns the number of variables of a formula described over the given number of steps.
+     *
+     * @param horizon the number of steps of the formula.
+     * @return the highest variable of the formula.
+     */
+    public int getVariableCount(int horizon) {
+        return horizon * this.getVariablesPerStep() + this.fluent_count;
+    }
+
+    /**
+     * Returns the variable of a fluent at a given step.
+     *
+     * @param fluent the position of the fluent in the fluent list.
+     * @param step the step.
+     * @return the variable of the fluent.
+     */
+    public int fluent(int fluent, int step) {
+        return step * this.getVariablesPerStep() + fluent + 1;
+    }
+
+    /**
+     * Returns the variable of an action at a given step.
+     *
+     * @param action the position of the action in the action list.
+     * @param step the step.
+     * @return the variable of the action.
+     */
+    public int action(int action, int step) {
+        return step * this.getVariablesPerStep() + this.fluent_count + action + 1;
+    }
+
+    /**
+     * Sends the unit clauses describing the initial state to the sink.
+     *
+     * @param sink the sink receiving the clauses.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    public void encodeInitialState(ClauseSink sink) throws ContradictionException {
+        sink.addVariables(this.fluent_count);
+        sink.setCategory(ClauseCategory.INITIAL_STATE);
+        IVecInt clause = new VecInt(1);
+        for (int fluent = 0; fluent < this.fluent_count; fluent++) {
+            add_unit(sink, clause, this.problem.isInitiallyTrue(fluent) ? fluent + 1 : -fluent - 1);
+        }
+    }
+
+    /**
+     * Sends the clauses describing the transition from a step to the next one to the sink: the preconditions and
+     * effects of the actions, the state transitions and the disjunctions between the actions that cannot be taken
+     * together.
+     *
+     * @param sink the sink receiving the clauses.
+     * @param step the step the transition starts from.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    public void encodeStep(ClauseSink sink, int step) throws ContradictionException {
+        sink.addVariables(this.getVariableCount(step + 1));
+        if (step >= this.template_step) {
+            this.template.stamp(sink, step * this.getVariablesPerStep());
+        } else {
+            this.build_step(sink, step, step);
+        }
+    }
+
+    /**
+     * Builds the clauses of the transition from a step to the next one.
+     *
+     * @param sink the sink receiving the clauses.
+     * @param step the step the transition starts from, which gives the variables of the clauses.
+     * @param layer the layer of the planning graph used to prune the variables of the step.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    private void build_step(ClauseSink sink, int step, int layer) throws ContradictionException {
+        IVecInt clause = new VecInt();
+
+        // Actions
+
+        sink.setCategory(ClauseCategory.ACTION);
+        // The actions that are not useful at this step are fixed to false, and left out of all the other clauses.
+        boolean[] useful = this.get_useful(layer);
+        int useful_count = 0;
+        for (int i = 0; i < this.action_count; i++) {
+            if (!useful[i]) {
+                add_unit(sink, clause, -this.action(i, step));
+                continue;
+            }
+            useful_count++;
+            for (int precondition : this.problem.getPreconditions(i)) {
+                add_binary(sink, clause, -this.action(i, step), this.literal(precondition, step));
+            }
+            for (int effect : this.problem.getEffects(i)) {
+                if (effect < 0 && this.is_implied_deletion(i, -effect - 1)) {
+                    continue;
+                }
+                add_binary(sink, clause, -this.action(i, step), this.literal(effect, step + 1));
+            }
+        }
+
+        // State transitions
+
+        sink.setCategory(ClauseCategory.FRAME);
+        for (int fluent = 0; fluent < this.fluent_count; fluent++) {
+
+            // A fluent that can only take one value at the next step also had that value at this step, so the
+            // transition clauses are already satisfied by fixing it.
+            if (this.reachability != null && !this.reachability.canBeTrue(fluent, layer + 1)) {
+                add_unit(sink, clause, -this.fluent(fluent, step + 1));
+                continue;
+            }
+            if (this.reachability != null && !this.reachability.canBeFalse(fluent, layer + 1)) {
+                add_unit(sink, clause, this.fluent(fluent, step + 1));
+                continue;
+            }
+
+            if (this.lazy && !this.eager_frames[fluent]) {
+                continue;
+            }
+
+            // A fluent of a group cannot become true by itself, since the fluent of the group it replaces must be
+            // removed by an action, which adds a fluent of the group.
+            if (this.groups == null || !this.groups.isGrouped(fluent)) {
+                this.add_frame(sink, clause, fluent, step, true, useful);
+            }
+            this.add_frame(sink, clause, fluent, step, false, useful);
+        }
+
+        // Action disjunctions
+
+        sink.setCategory(ClauseCategory.MUTEX);
+        if (this.lazy) {
+            this.encode_invariants(sink, clause, step + 1, layer + 1);
+            return;
+        }
+        if (this.semantics != StepSemantics.SEQUENTIAL) {
+            for (int i = 0; i < this.interferences.length; i += 2) {
+                if (useful[this.interferences[i]] && useful[this.interferences[i + 1]]) {
+                    add_binary(sink, clause, -this.action(this.interferences[i], step),
+                            -this.action(this.interferences[i + 1], step));
+                }
+            }
+            this.encode_invariants(sink, clause, step + 1, layer + 1);
+            return;
+        }
+        int[] actions = new int[useful_count];
+        for (int i = 0, j = 0; i < this.action_count; i++) {
+            if (useful[i]) {
+                actions[j++] = this.action(i, step);
+            }
+        }
+        this.at_most_one.encode(sink, actions, this.action(this.action_count, step));
+        this.encode_invariants(sink, clause, step + 1, layer + 1);
+    }
+
+    /**
+     * Returns which actions are useful at a layer of the planning graph, the others being fixed to false.
+     *
+     * @param layer the layer of the planning graph.
+     * @return whether each action is useful.
+     */
+    private boolean[] get_useful(int layer) {
+        boolean[] useful = new boolean[this.action_count];
+        for (int i = 0; i < this.action_count; i++) {
+            useful[i] = this.reachability == null || this.reachability.isUseful(i, layer);
+        }
+        return useful;
+    }
+
+    /**
+     * Sends the frame axiom stating that a fluent only becomes true, or false, through a useful action that adds, or
+     * deletes, it.
+     *
+     * @param sink the sink receiving the clause.
+     * @param clause the vector reused to send the clause.
+     * @param fluent the position of the fluent in the fluent list.
+     * @param step the step the transition starts from.
+     * @param becomes_true whether the axiom is about the fluent becoming true rather than false.
+     * @param useful whether each action is useful at this step.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    private void add_frame(ClauseSink sink, IVecInt clause, int fluent, int step, boolean becomes_true,
+                           boolean[] useful) throws ContradictionException {
+        clause.clear();
+        clause.push(becomes_true ? this.fluent(fluent, step) : -this.fluent(fluent, step));
+        clause.push(becomes_true ? -this.fluent(fluent, step + 1) : this.fluent(fluent, step + 1));
+        for (int transition : becomes_true ? this.problem.getAdders(fluent) : this.problem.getDeleters(fluent)) {
+            if (useful[transition]) {
+                clause.push(this.action(transition, step));
+            }
+        }
+        sink.addClause(clause);
+    }
+
+    /**
+     * Returns whether a deletion of an action is implied by the exactly-one constraint of a group, because the action
+     * adds another fluent of a group of the deleted fluent.
+     *
+     * @param action the position of the action in the action list.
+     * @param fluent the position of the deleted fluent in the fluent list.
+     * @return true if the deletion does not need its own clause.
+     */
+    private boolean is_implied_deletion(int action, int fluent) {
+        if (this.groups == null || !this.groups.isGrouped(fluent)) {
+            return false;
+        }
+        boolean implied = false;
+        for (int effect : this.problem.getEffects(action)) {
+            if (effect == fluent + 1) {
+                return false;
+            }
+            implied |= effect > 0 && this.groups.isTogether(fluent, effect - 1);
+        }
+        return implied;
+    }
+
+    /**
+     * Sends the exactly-one constraints of the groups and the fluent mutexes of a step to the sink, leaving out the
+     * fluents that reachability already fixes to false at this step and the mutexes within a group.
+     *
+     * @param sink the sink receiving the clauses.
+     * @param clause the vector reused to send the clauses.
+     * @param step the step of the fluents.
+     * @param layer the layer of the planning graph used to prune the fluents of the step.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    private void encode_invariants(ClauseSink sink, IVecInt clause, int step, int layer)
+            throws ContradictionException {
+        sink.setCategory(ClauseCategory.INVARIANT);
+        if (this.groups != null) {
+            for (int[] group : this.groups.getGroups()) {
+                clause.clear();
+                for (int fluent : group) {
+                    if (this.reachability == null || this.reachability.canBeTrue(fluent, layer)) {
+                        clause.push(this.fluent(fluent, step));
+                    }
+                }
+                if (clause.size() > 0) {
+                    sink.addClause(clause);
+                }
+                if (clause.size() > 1) {
+                    sink.addAtMost(clause, 1);
+                }
+            }
+        }
+        if (this.mutexes == null || this.lazy) {
+            return;
+        }
+        int[] pairs = this.mutexes.getMutexes();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (this.groups != null && this.groups.isTogether(pairs[i], pairs[i + 1])) {
+                continue;
+            }
+            if (this.reachability == null || (this.reachability.canBeTrue(pairs[i], layer)
+                    && this.reachability.canBeTrue(pairs[i + 1], layer))) {
+                add_binary(sink, clause, -this.fluent(pairs[i], step), -this.fluent(pairs[i + 1], step));
+            }
+        }
+    }
+
+    /**
+     * Sends the unit clauses describing the goal at the last step to the sink.
+     *
+     * @param sink the sink receiving the clauses.
+     * @param horizon the last step of the formula.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    public void encodeGoal(ClauseSink sink, int horizon) throws ContradictionException {
+        sink.setCategory(ClauseCategory.GOAL);
+        IVecInt clause = new VecInt(1);
+        for (int fluent : this.problem.getGoal()) {
+            add_unit(sink, clause, this.literal(fluent, horizon));
+        }
+    }
+
+    /**
+     * Returns the goal at the last step as assumptions, so that it can be checked without being added to the solver.
+     *
+     * @param horizon the last step of the formula.
+     * @return the literals of the goal at the last step.
+     */
+    public IVecInt getGoalAssumptions(int horizon) {
+        IVecInt assumptions = new VecInt(this.problem.getGoal().length);
+        for (int fluent : this.problem.getGoal()) {
+            assumptions.push(this.literal(fluent, horizon));
+        }
+        return assumptions;
+    }
+
+    /**
+     * Decodes a model of a formula into the value of each variable.
+     *
+     * @param model the model returned by the solver.
+     * @param horizon the number of steps the formula was described over.
+     * @return the value of each variable, indexed by variable.
+     */
+    public boolean[] decode(int[] model, int horizon) {
+        // The model only lists the variables that appear in the formula, so the position of a literal in it is not
+        // always its variable.
+        boolean[] values = new boolean[this.getVariableCount(horizon) + 1];
+        for (int literal : model) {
+            if (literal > 0 && literal < values.length) {
+                values[literal] = true;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sends the constraints left out by the lazy mode that a model violates to the sink: the disjunctions between the
+     * actions taken at the same step, the frame axioms of the fluents that change without an action, and the mutexes
+     * between the fluents that are true together. A model that violates none of them describes a valid plan.
+     *
+     * @param sink the sink receiving the clauses.
+     * @param values the value of each variable of the model, as given by {@link #decode(int[], int)}.
+     * @param horizon the number of steps the formula was described over.
+     * @return the number of constraints sent, 0 if the model satisfies all of them.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    public int refine(ClauseSink sink, boolean[] values, int horizon) throws ContradictionException {
+        if (!this.lazy) {
+            return 0;
+        }
+        IVecInt clause = new VecInt();
+        int added = 0;
+        int[] taken = new int[this.action_count];
+        for (int step = 0; step < horizon; step++) {
+            int layer = Math.min(step, this.template_step);
+            boolean[] useful = this.get_useful(layer);
+            int taken_count = 0;
+            for (int i = 0; i < this.action_count; i++) {
+                if (useful[i] && values[this.action(i, step)]) {
+                    taken[taken_count++] = i;
+                }
+            }
+
+            sink.setCategory(ClauseCategory.MUTEX);
+            for (int i = 0; i < taken_count; i++) {
+                for (int j = i + 1; j < taken_count; j++) {
+                    if (this.interfering == null || Arrays.binarySearch(this.interfering[taken[i]], taken[j]) >= 0) {
+                        add_binary(sink, clause, -this.action(taken[i], step), -this.action(taken[j], step));
+                        added++;
+                    }
+                }
+            }
+
+            sink.setCategory(ClauseCategory.FRAME);
+            for (int fluent = 0; fluent < this.fluent_count; fluent++) {
+                boolean before = values[this.fluent(fluent, step)];
+                boolean after = values[this.fluent(fluent, step + 1)];
+                if (before == after || this.eager_frames[fluent]) {
+                    continue;
+                }
+                if (after && this.groups != null && this.groups.isGrouped(fluent)) {
+                    continue;
+                }
+                boolean explained = false;
+                for (int transition : after ? this.problem.getAdders(fluent) : this.problem.getDeleters(fluent)) {
+                    explained |= useful[transition] && values[this.action(transition, step)];
+                }
+                if (!explained) {
+                    this.add_frame(sink, clause, fluent, step, after, useful);
+                    added++;
+                }
+            }
+
+            if (this.mutexes != null) {
+                sink.setCategory(ClauseCategory.INVARIANT);
+                for (int fluent1 = 0; fluent1 < this.fluent_count; fluent1++) {
+                    if (!values[this.fluent(fluent1, step + 1)]) {
+                        continue;
+                    }
+                    for (int fluent2 = fluent1 + 1; fluent2 < this.fluent_count; fluent2++) {
+                        if (values[this.fluent(fluent2, step + 1)] && this.mutexes.isMutex(fluent1, fluent2)
+                                && (this.groups == null || !this.groups.isTogether(fluent1, fluent2))) {
+                            add_binary(sink, clause, -this.fluent(fluent1, step + 1), -this.fluent(fluent2, step + 1));
+                            added++;
+                        }
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Returns the variable of a signed fluent position at a given step, with the same sign.
+     *
+     * @param fluent the signed fluent position, starting at 1.
+     * @param step the step.
+     * @return the literal of the fluent.
+     */
+    private int literal(int fluent, int step) {
+        return fluent > 0 ? this.fluent(fluent - 1, step) : -this.fluent(-fluent - 1, step);
+    }
+
+    private static void add_unit(ClauseSink sink, IVecInt clause, int literal) throws ContradictionException {
+        clause.clear();
+        clause.push(literal);
+        sink.addClause(clause);
+    }
+
+    private static void add_binary(ClauseSink sink, IVecInt clause, int literal1, int literal2)
+            throws ContradictionException {
+        clause.clear();
+        clause.push(literal1);
+        clause.push(literal2);
+        sink.addClause(clause);
+    }
+}
@@ -0,0 +1,176 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.minisat.core.ILits;
+import org.sat4j.minisat.orders.RSATPhaseSelectionStrategy;
+import org.sat4j.minisat.orders.VarOrderHeap;
+
+import java.util.Arrays;
+
+/**
+ * This variable order follows the goal-directed action selection of J. Rintanen (Planning as satisfiability:
+ * heuristics, Artificial Intelligence 193, 2012). It knows where the fluents and actions of each step are in the
+ * formula, and branches on the actions that support the open goals, backwards from the last step.
+ * <p>
+ * For each goal, and then for each precondition of an action already chosen to support a goal, the steps are visited
+ * backwards from the step where the fluent is needed. If an action that makes the fluent true is already taken at a
+ * step, its preconditions become goals at that step. Otherwise, at the first step where the fluent is false, an action
+ * that could make it true is chosen and taken. When every goal is supported, or no action can be chosen, the decision
+ * is left to the usual activity-based order.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class PlanningOrder extends VarOrderHeap {
+
+    /**
+     * The serial version of the order, which is serializable as all the SAT4J orders are.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The encoder that laid out the variables of the formula.
+     */
+    private final transient PlanningEncoder encoder;
+
+    /**
+     * The compiled problem of the encoder.
+     */
+    private final transient CompiledProblem problem;
+
+    /**
+     * The last step of the formula being solved, or 0 if it is not known.
+     */
+    private volatile int horizon = 0;
+
+    /**
+     * The goals left to support, as pairs of a signed fluent position and a step.
+     */
+    private int[] goals = new int[64];
+
+    /**
+     * The generation of the last visit of each signed fluent at each step, so that a goal is only visited once per
+     * decision.
+     */
+    private int[] visits = new int[0];
+
+    /**
+     * The generation of the current decision.
+     */
+    private int generation = 0;
+
+    /**
+     * Creates the order for the formulae of an encoder.
+     *
+     * @param encoder the encoder that lays out the variables of the formulae.
+     */
+    public PlanningOrder(PlanningEncoder encoder) {
+        super(new RSATPhaseSelectionStrategy());
+        this.encoder = encoder;
+        this.problem = encoder.getProblem();
+    }
+
+    /**
+     * Sets the last step of the formula about to be solved, whose goals are supported first.
+     *
+     * @param horizon the number of steps of the formula, or 0 to only use the activity-based order.
+     */
+    public void setHorizon(int horizon) {
+        this.horizon = horizon;
+    }
+
+    @Override
+    public int select() {
+        int current_horizon = this.horizon;
+        if (current_horizon > 0) {
+            int literal = this.select_support(current_horizon);
+            if (literal != ILits.UNDEFINED) {
+                return literal;
+            }
+        }
+        return super.select();
+    }
+
+    /**
+     * Looks for an action supporting an open goal.
+     *
+     * @param last_step the step of the goal.
+     * @return the positive literal of the action to take, or {@link ILits#UNDEFINED} if every goal is supported or
+     *         cannot be.
+     */
+    private int select_support(int last_step) {
+        int size = 2 * (this.encoder.getVariableCount(last_step) + 1);
+        if (this.visits.length < size) {
+            this.visits = new int[size];
+            this.generation = 0;
+        }
+        this.generation++;
+        if (this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.visits, 0);
+            this.generation = 1;
+        }
+
+        int goal_count = 0;
+        for (int goal : this.problem.getGoal()) {
+            goal_count = this.push(goal_count, goal, last_step);
+        }
+        while (goal_count > 0) {
+            goal_count -= 2;
+            int fluent = this.goals[goal_count];
+            int step = this.goals[goal_count + 1];
+            int position = Math.abs(fluent) - 1;
+            int[] supporters = fluent > 0 ? this.problem.getAdders(position) : this.problem.getDeleters(position);
+            for (int s = step - 1; s >= 0; s--) {
+                int support = -1;
+                int candidate = ILits.UNDEFINED;
+                for (int action : supporters) {
+                    int literal = LiteralsUtils.posLit(this.encoder.action(action, s));
+                    if (this.lits.isSatisfied(literal)) {
+                        support = action;
+                        break;
+                    }
+                    if (candidate == ILits.UNDEFINED && this.lits.isUnassigned(literal)) {
+                        candidate = literal;
+                    }
+                }
+                if (support >= 0) {
+                    for (int precondition : this.problem.getPreconditions(support)) {
+                        goal_count = this.push(goal_count, precondition, s);
+                    }
+                    break;
+                }
+                int variable = this.encoder.fluent(position, s);
+                if (this.lits.isFalsified(fluent > 0 ? LiteralsUtils.posLit(variable)
+                        : LiteralsUtils.negLit(variable))) {
+                    if (candidate != ILits.UNDEFINED) {
+                        return candidate;
+                    }
+                    break;
+                }
+            }
+        }
+        return ILits.UNDEFINED;
+    }
+
+    /**
+     * Adds a goal to support, unless it was already visited for this decision.
+     *
+     * @param goal_count the number of integers of the goal stack.
+     * @param fluent the signed fluent position of the goal, starting at 1.
+     * @param step the step where the goal must hold.
+     * @return the new number of integers of the goal stack.
+     */
+    private int push(int goal_count, int fluent, int step) {
+        int key = 2 * this.encoder.fluent(Math.abs(fluent) - 1, step) + (fluent > 0 ? 0 : 1);
+        if (this.visits[key] == this.generation) {
+            return goal_count;
+        }
+        this.visits[key] = this.generation;
+        if (goal_count + 2 > this.goals.length) {
+            this.goals = Arrays.copyOf(this.goals, this.goals.length * 2);
+        }
+        this.goals[goal_count] = fluent;
+        this.goals[goal_count + 1] = step;
+        return goal_count + 2;
+    }
+}
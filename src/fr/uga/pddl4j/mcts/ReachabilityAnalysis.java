@@ -0,0 +1,235 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.problem.Problem;
+
+import java.util.Arrays;
+
+/**
+ * This class computes a relaxed planning graph of a problem, which tells the encoder which fluents and actions cannot
+ * take a given value or be applied at a given step, so that their variables can be fixed.
+ * <p>
+ * The forward pass starts from the initial state and, layer after layer, applies every action whose preconditions can
+ * hold without ever removing what was reached before. The first layer where a literal or an action appears is a lower
+ * bound on the step where it can appear in any plan, whatever the step semantics. The backward pass starts from the
+ * goal and keeps only the actions that achieve a literal that is needed by the goal or by another kept action; the
+ * other actions can never contribute to a plan.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class ReachabilityAnalysis {
+
+    /**
+     * The layer of a literal or action that is never reached.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The first layer where each fluent can be true.
+     */
+    private final int[] true_layers;
+
+    /**
+     * The first layer where each fluent can be false.
+     */
+    private final int[] false_layers;
+
+    /**
+     * The first layer where each action can be applied.
+     */
+    private final int[] action_layers;
+
+    /**
+     * Whether each action can contribute to reaching the goal.
+     */
+    private final boolean[] relevant_actions;
+
+    /**
+     * The first layer where the whole goal can hold.
+     */
+    private final int goal_layer;
+
+    /**
+     * Analyses the given problem.
+     *
+     * @param problem the problem to analyse.
+     */
+    public ReachabilityAnalysis(Problem problem) {
+        this(new CompiledProblem(problem));
+    }
+
+    /**
+     * Analyses the given compiled problem.
+     *
+     * @param problem the compiled problem to analyse.
+     */
+    public ReachabilityAnalysis(CompiledProblem problem) {
+        int fluent_count = problem.getFluentCount();
+        int action_count = problem.getActionCount();
+        this.true_layers = new int[fluent_count];
+        this.false_layers = new int[fluent_count];
+        this.action_layers = new int[action_count];
+        this.relevant_actions = new boolean[action_count];
+        Arrays.fill(this.true_layers, UNREACHABLE);
+        Arrays.fill(this.false_layers, UNREACHABLE);
+        Arrays.fill(this.action_layers, UNREACHABLE);
+
+        // Forward pass
+
+        for (int f = 0; f < fluent_count; f++) {
+            if (problem.isInitiallyTrue(f)) {
+                this.true_layers[f] = 0;
+            } else {
+                this.false_layers[f] = 0;
+            }
+        }
+        boolean changed = true;
+        for (int layer = 0; changed; layer++) {
+            changed = false;
+            for (int a = 0; a < action_count; a++) {
+                if (this.action_layers[a] != UNREACHABLE || !this.reached(problem.getPreconditions(a), layer)) {
+                    continue;
+                }
+                this.action_layers[a] = layer;
+                changed |= this.reach(problem.getEffects(a), layer + 1);
+            }
+        }
+
+        this.goal_layer = this.latest(problem.getGoal());
+
+        // Backward pass
+
+        boolean[] relevant_pos = new boolean[fluent_count];
+        boolean[] relevant_neg = new boolean[fluent_count];
+        mark(problem.getGoal(), relevant_pos, relevant_neg);
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (int a = 0; a < action_count; a++) {
+                if (this.relevant_actions[a] || this.action_layers[a] == UNREACHABLE
+                        || !any(problem.getEffects(a), relevant_pos, relevant_neg)) {
+                    continue;
+                }
+                this.relevant_actions[a] = true;
+                mark(problem.getPreconditions(a), relevant_pos, relevant_neg);
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the first layer where the whole goal can hold, which is the shortest horizon worth searching.
+     *
+     * @return the layer of the goal, or {@link #UNREACHABLE} if the goal can never hold.
+     */
+    public int getGoalLayer() {
+        return this.goal_layer;
+    }
+
+    /**
+     * Returns whether a fluent can be true at a given step.
+     *
+     * @param fluent the position of the fluent in the fluent list.
+     * @param step the step.
+     * @return false if the fluent is always false at this step.
+     */
+    public boolean canBeTrue(int fluent, int step) {
+        return this.true_layers[fluent] <= step;
+    }
+
+    /**
+     * Returns whether a fluent can be false at a given step.
+     *
+     * @param fluent the position of the fluent in the fluent list.
+     * @param step the step.
+     * @return false if the fluent is always true at this step.
+     */
+    public boolean canBeFalse(int fluent, int step) {
+        return this.false_layers[fluent] <= step;
+    }
+
+    /**
+     * Returns whether an action can be useful at a given step: it must be applicable at that step and contribute to
+     * reaching the goal.
+     *
+     * @param action the position of the action in the action list.
+     * @param step the step.
+     * @return false if the action can be left out of this step.
+     */
+    public boolean isUseful(int action, int step) {
+        return this.relevant_actions[action] && this.action_layers[action] <= step;
+    }
+
+    /**
+     * Returns the last layer where a literal or an action is reached for the first time. From this layer on, the
+     * analysis gives the same answers at every step.
+     *
+     * @return the layer of the fixpoint of the planning graph.
+     */
+    public int getFixpointLayer() {
+        int fixpoint = 0;
+        for (int[] layers : new int[][] {this.true_layers, this.false_layers, this.action_layers}) {
+            for (int layer : layers) {
+                if (layer != UNREACHABLE) {
+                    fixpoint = Math.max(fixpoint, layer);
+                }
+            }
+        }
+        return fixpoint;
+    }
+
+    /**
+     * Returns the layers of the fluents of a signed fluent position: the layers where they can be true if the position
+     * is positive, false otherwise.
+     *
+     * @param fluent the signed fluent position, starting at 1.
+     * @return the layers of the literal.
+     */
+    private int[] layers(int fluent) {
+        return fluent > 0 ? this.true_layers : this.false_layers;
+    }
+
+    private boolean reached(int[] fluents, int layer) {
+        for (int fluent : fluents) {
+            if (this.layers(fluent)[Math.abs(fluent) - 1] > layer) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean reach(int[] fluents, int layer) {
+        boolean changed = false;
+        for (int fluent : fluents) {
+            int[] layers = this.layers(fluent);
+            if (layers[Math.abs(fluent) - 1] == UNREACHABLE) {
+                layers[Math.abs(fluent) - 1] = layer;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private int latest(int[] fluents) {
+        int latest = 0;
+        for (int fluent : fluents) {
+            latest = Math.max(latest, this.layers(fluent)[Math.abs(fluent) - 1]);
+        }
+        return latest;
+    }
+
+    private static boolean any(int[] fluents, boolean[] marks_pos, boolean[] marks_neg) {
+        for (int fluent : fluents) {
+            if ((fluent > 0 ? marks_pos : marks_neg)[Math.abs(fluent) - 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void mark(int[] fluents, boolean[] marks_pos, boolean[] marks_neg) {
+        for (int fluent : fluents) {
+            (fluent > 0 ? marks_pos : marks_neg)[Math.abs(fluent) - 1] = true;
+        }
+    }
+}
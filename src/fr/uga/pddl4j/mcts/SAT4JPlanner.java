@@ -1,25 +1,29 @@
 package fr.uga.pddl4j.mcts;
 
 import fr.uga.pddl4j.parser.DefaultParsedProblem;
+import fr.uga.pddl4j.parser.ErrorManager;
+import fr.uga.pddl4j.parser.Message;
 import fr.uga.pddl4j.plan.Plan;
 import fr.uga.pddl4j.plan.SequentialPlan;
 import fr.uga.pddl4j.planners.AbstractPlanner;
+import fr.uga.pddl4j.planners.InvalidConfigurationException;
+import fr.uga.pddl4j.planners.Statistics;
 import fr.uga.pddl4j.problem.*;
-import fr.uga.pddl4j.problem.operator.AbstractFluentDescription;
 import fr.uga.pddl4j.problem.operator.Action;
-import fr.uga.pddl4j.util.BitSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.sat4j.minisat.SolverFactory;
-import org.sat4j.reader.LecteurDimacs;
-import org.sat4j.reader.ParseFormatException;
+import org.openjdk.jol.info.GraphLayout;
+import org.sat4j.core.VecInt;
 import org.sat4j.specs.ContradictionException;
-import org.sat4j.specs.IProblem;
+import org.sat4j.specs.IVecInt;
 import org.sat4j.specs.TimeoutException;
 import picocli.CommandLine;
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * This class uses the SAT4J library to solve planning problems.
@@ -44,6 +48,631 @@ public class SAT4JPlanner extends AbstractPlanner {
      */
     private static final Logger LOGGER = LogManager.getLogger(SAT4JPlanner.class.getName());
 
+    /**
+     * Whether a single solver is kept alive and extended step by step over all the horizons.
+     */
+    private boolean incremental = true;
+
+    /**
+     * The DIMACS file the formulae are copied to, or null if they are only sent to the solver.
+     */
+    private String cnf_file = null;
+
+    /**
+     * The encoding of the constraint stating that at most one action is taken at each step.
+     */
+    private AtMostOneEncoding at_most_one = AtMostOneEncoding.COMMANDER;
+
+    /**
+     * The way actions can be taken at the same step.
+     */
+    private StepSemantics semantics = StepSemantics.SEQUENTIAL;
+
+    /**
+     * Whether a relaxed planning graph is used to fix the variables that cannot change and to skip the short horizons.
+     */
+    private boolean reachability_pruning = true;
+
+    /**
+     * Whether the pairs of fluents that are never true together are added to every step.
+     */
+    private boolean invariants = true;
+
+    /**
+     * The way the state of each step is described.
+     */
+    private StateEncoding state_encoding = StateEncoding.BOOLEAN;
+
+    /**
+     * Whether the action disjunctions, the fluent mutexes and most frame axioms are only added once a model violates
+     * them.
+     */
+    private boolean lazy = false;
+
+    /**
+     * The way the solving time is shared between the horizons.
+     */
+    private HorizonScheduling scheduling = HorizonScheduling.SEQUENTIAL;
+
+    /**
+     * The number of threads solving horizons when they are scheduled concurrently.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of horizons solved at the same time when they are scheduled concurrently.
+     */
+    private int horizon_window = 8;
+
+    /**
+     * The order in which the horizons are tried when they are searched one at a time.
+     */
+    private HorizonStrategy horizon_strategy = HorizonStrategy.LINEAR;
+
+    /**
+     * The step between two horizons of the linear strategy.
+     */
+    private int horizon_step = 1;
+
+    /**
+     * The longest horizon searched.
+     */
+    private int max_horizon = 30;
+
+    /**
+     * Whether the plan found is printed step by step, with the state reached at each step.
+     */
+    private boolean verbose = false;
+
+    /**
+     * The file the measures of each horizon are written to, or null if they are not written.
+     */
+    private String metrics_file = null;
+
+    /**
+     * The directory of the cache of compiled problems, or null if nothing is cached.
+     */
+    private String cache_directory = null;
+
+    /**
+     * The size the cache of compiled problems must fit in, in megabytes.
+     */
+    private int cache_limit = 256;
+
+    /**
+     * The cache of the current search, or null if the encoding of the problem is not stored.
+     */
+    private EncodingCache cache = null;
+
+    /**
+     * The key of the problem of the current search in the cache.
+     */
+    private String cache_key = null;
+
+    /**
+     * The stream the progress of the search and the plan found are printed to.
+     */
+    private PrintStream output = System.out;
+
+    /**
+     * Whether the heap usage of the process is part of the measures of each horizon.
+     */
+    private boolean heap_measured = true;
+
+    /**
+     * The measures of the horizons tried by the last search.
+     */
+    private final List<HorizonMetrics> metrics = new ArrayList<>();
+
+    /**
+     * The configurations of the solvers raced on each formula.
+     */
+    private List<SolverConfiguration> portfolio = Collections.singletonList(SolverConfiguration.DEFAULT);
+
+    /**
+     * The number of variables each formula is split over when it is solved with cube and conquer, or 0.
+     */
+    private int cube_depth = 0;
+
+    /**
+     * Sets whether a single solver is kept alive and extended step by step over all the horizons, instead of rebuilding
+     * the whole formula and solver at each horizon.
+     *
+     * @param incremental whether the search is incremental.
+     */
+    @CommandLine.Option(names = {"-i", "--incremental"}, defaultValue = "true", arity = "1", paramLabel = "<boolean>",
+            description = "Keep a single solver alive over all the horizons (preset true).")
+    public final void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns whether a single solver is kept alive and extended step by step over all the horizons.
+     *
+     * @return whether the search is incremental.
+     */
+    public final boolean isIncremental() {
+        return this.incremental;
+    }
+
+    /**
+     * Sets the DIMACS file the formulae are copied to for debugging or external solvers. The formulae are sent to the
+     * solver directly either way; no file is written if it is null.
+     *
+     * @param cnf_file the path of the DIMACS file, or null.
+     */
+    @CommandLine.Option(names = {"-c", "--cnf"}, paramLabel = "<file>",
+            description = "Copy the formulae to a DIMACS file (preset none).")
+    public final void setCnfFile(final String cnf_file) {
+        this.cnf_file = cnf_file;
+    }
+
+    /**
+     * Returns the DIMACS file the formulae are copied to.
+     *
+     * @return the path of the DIMACS file, or null if none is written.
+     */
+    public final String getCnfFile() {
+        return this.cnf_file;
+    }
+
+    /**
+     * Sets the encoding of the constraint stating that at most one action is taken at each step.
+     *
+     * @param at_most_one the at-most-one encoding.
+     */
+    @CommandLine.Option(names = {"-a", "--at-most-one"}, defaultValue = "COMMANDER", paramLabel = "<encoding>",
+            description = "Set the encoding of the action disjunctions: PAIRWISE, SEQUENTIAL, PRODUCT, COMMANDER or "
+                    + "CARDINALITY (preset COMMANDER).")
+    public final void setAtMostOneEncoding(final AtMostOneEncoding at_most_one) {
+        this.at_most_one = at_most_one;
+    }
+
+    /**
+     * Returns the encoding of the constraint stating that at most one action is taken at each step.
+     *
+     * @return the at-most-one encoding.
+     */
+    public final AtMostOneEncoding getAtMostOneEncoding() {
+        return this.at_most_one;
+    }
+
+    /**
+     * Sets the way actions can be taken at the same step. Under parallel semantics, non-interfering actions share a step
+     * and are linearized in the order of the action list when the plan is built, so fewer steps are needed.
+     *
+     * @param semantics the step semantics.
+     */
+    @CommandLine.Option(names = {"-s", "--semantics"}, defaultValue = "SEQUENTIAL", paramLabel = "<semantics>",
+            description = "Set the step semantics: SEQUENTIAL, FORALL_STEP or EXISTS_STEP (preset SEQUENTIAL).")
+    public final void setStepSemantics(final StepSemantics semantics) {
+        this.semantics = semantics;
+    }
+
+    /**
+     * Returns the way actions can be taken at the same step.
+     *
+     * @return the step semantics.
+     */
+    public final StepSemantics getStepSemantics() {
+        return this.semantics;
+    }
+
+    /**
+     * Sets whether the formulae start relaxed, without the disjunctions between actions, the fluent mutexes and the
+     * frame axioms of the fluents outside the goal. Each model found is then checked, the constraints it violates are
+     * added to the solver, and the formula is solved again, until a model describes a valid plan.
+     *
+     * @param lazy whether the constraints are added lazily.
+     */
+    @CommandLine.Option(names = {"-z", "--lazy"}, defaultValue = "false", arity = "1", paramLabel = "<boolean>",
+            description = "Add the action disjunctions, fluent mutexes and frame axioms only once a model violates "
+                    + "them (preset false).")
+    public final void setLazy(final boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Returns whether the formulae start relaxed, the constraints violated by a model being added afterwards.
+     *
+     * @return whether the constraints are added lazily.
+     */
+    public final boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * Sets the way the state of each step is described. With multi-valued variables, the groups of fluents of which
+     * exactly one is true in every reachable state are found by an h^2 analysis, and the frame axioms, deletions and
+     * mutexes that their exactly-one constraints imply are left out of the formulae.
+     *
+     * @param state_encoding the state encoding.
+     */
+    @CommandLine.Option(names = {"-g", "--state-encoding"}, defaultValue = "BOOLEAN", paramLabel = "<encoding>",
+            description = "Set the state encoding: BOOLEAN or MULTI_VALUED (preset BOOLEAN).")
+    public final void setStateEncoding(final StateEncoding state_encoding) {
+        this.state_encoding = state_encoding;
+    }
+
+    /**
+     * Returns the way the state of each step is described.
+     *
+     * @return the state encoding.
+     */
+    public final StateEncoding getStateEncoding() {
+        return this.state_encoding;
+    }
+
+    /**
+     * Sets whether a relaxed planning graph is computed before the search. The fluents and actions that cannot be true
+     * or applied at a step, and the actions that cannot contribute to the goal, are then fixed to false, and the search
+     * starts at the first horizon where the goal is reachable.
+     *
+     * @param reachability_pruning whether the formulae are pruned by reachability.
+     */
+    @CommandLine.Option(names = {"-r", "--reachability"}, defaultValue = "true", arity = "1", paramLabel = "<boolean>",
+            description = "Prune the formulae with a relaxed planning graph (preset true).")
+    public final void setReachabilityPruning(final boolean reachability_pruning) {
+        this.reachability_pruning = reachability_pruning;
+    }
+
+    /**
+     * Returns whether a relaxed planning graph is computed before the search.
+     *
+     * @return whether the formulae are pruned by reachability.
+     */
+    public final boolean isReachabilityPruning() {
+        return this.reachability_pruning;
+    }
+
+    /**
+     * Sets whether the pairs of fluents that are never true together, found by an h^2 analysis of the problem, are
+     * added to every step as binary clauses.
+     *
+     * @param invariants whether the fluent mutexes are added.
+     */
+    @CommandLine.Option(names = {"-x", "--invariants"}, defaultValue = "true", arity = "1", paramLabel = "<boolean>",
+            description = "Add the fluent mutexes to every step (preset true).")
+    public final void setInvariants(final boolean invariants) {
+        this.invariants = invariants;
+    }
+
+    /**
+     * Returns whether the pairs of fluents that are never true together are added to every step.
+     *
+     * @return whether the fluent mutexes are added.
+     */
+    public final boolean isInvariants() {
+        return this.invariants;
+    }
+
+    /**
+     * Sets the way the solving time is shared between the horizons. With a concurrent scheduling, each horizon of the
+     * window gets its own solver, built from the first configuration of the portfolio, so the incremental setting is
+     * not used. A concurrent scheduling cannot be combined with a portfolio of several solvers or a cube depth.
+     *
+     * @param scheduling the horizon scheduling.
+     */
+    @CommandLine.Option(names = {"-H", "--horizon-scheduling"}, defaultValue = "SEQUENTIAL",
+            paramLabel = "<scheduling>",
+            description = "Set the horizon scheduling: SEQUENTIAL, INTERLEAVED or GEOMETRIC (preset SEQUENTIAL).")
+    public final void setHorizonScheduling(final HorizonScheduling scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    /**
+     * Returns the way the solving time is shared between the horizons.
+     *
+     * @return the horizon scheduling.
+     */
+    public final HorizonScheduling getHorizonScheduling() {
+        return this.scheduling;
+    }
+
+    /**
+     * Sets the number of threads solving horizons when they are scheduled concurrently, or the cubes of a formula
+     * when it is split.
+     *
+     * @param threads the number of threads.
+     */
+    @CommandLine.Option(names = {"-T", "--threads"}, paramLabel = "<integer>",
+            description = "Set the number of solving threads (preset the number of processors).")
+    public final void setThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of threads solving horizons when they are scheduled concurrently, or the cubes of a formula
+     * when it is split.
+     *
+     * @return the number of threads.
+     */
+    public final int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Sets the number of horizons solved at the same time when they are scheduled concurrently.
+     *
+     * @param horizon_window the number of horizons.
+     */
+    @CommandLine.Option(names = {"-W", "--horizon-window"}, defaultValue = "8", paramLabel = "<integer>",
+            description = "Set the number of horizons solved at the same time (preset 8).")
+    public final void setHorizonWindow(final int horizon_window) {
+        if (horizon_window < 1) {
+            throw new IllegalArgumentException("The horizon window must be positive");
+        }
+        this.horizon_window = horizon_window;
+    }
+
+    /**
+     * Returns the number of horizons solved at the same time when they are scheduled concurrently.
+     *
+     * @return the number of horizons.
+     */
+    public final int getHorizonWindow() {
+        return this.horizon_window;
+    }
+
+    /**
+     * Sets the order in which the horizons are tried when they are searched one at a time. The time left before the
+     * timeout of the planner is shared between the horizons the strategy may still try.
+     *
+     * @param horizon_strategy the horizon strategy.
+     */
+    @CommandLine.Option(names = {"-S", "--horizon-strategy"}, defaultValue = "LINEAR", paramLabel = "<strategy>",
+            description = "Set the horizon strategy: LINEAR, GEOMETRIC or EXPONENTIAL_BINARY (preset LINEAR).")
+    public final void setHorizonStrategy(final HorizonStrategy horizon_strategy) {
+        this.horizon_strategy = horizon_strategy;
+    }
+
+    /**
+     * Returns the order in which the horizons are tried when they are searched one at a time.
+     *
+     * @return the horizon strategy.
+     */
+    public final HorizonStrategy getHorizonStrategy() {
+        return this.horizon_strategy;
+    }
+
+    /**
+     * Sets the step between two horizons of the linear strategy.
+     *
+     * @param horizon_step the step.
+     */
+    @CommandLine.Option(names = {"-k", "--horizon-step"}, defaultValue = "1", paramLabel = "<integer>",
+            description = "Set the step between two horizons of the linear strategy (preset 1).")
+    public final void setHorizonStep(final int horizon_step) {
+        if (horizon_step < 1) {
+            throw new IllegalArgumentException("The horizon step must be positive");
+        }
+        this.horizon_step = horizon_step;
+    }
+
+    /**
+     * Returns the step between two horizons of the linear strategy.
+     *
+     * @return the step.
+     */
+    public final int getHorizonStep() {
+        return this.horizon_step;
+    }
+
+    /**
+     * Sets the longest horizon searched.
+     *
+     * @param max_horizon the longest horizon.
+     */
+    @CommandLine.Option(names = {"-m", "--max-horizon"}, defaultValue = "30", paramLabel = "<integer>",
+            description = "Set the longest horizon searched (preset 30).")
+    public final void setMaxHorizon(final int max_horizon) {
+        if (max_horizon < 1) {
+            throw new IllegalArgumentException("The longest horizon must be positive");
+        }
+        this.max_horizon = max_horizon;
+    }
+
+    /**
+     * Returns the longest horizon searched.
+     *
+     * @return the longest horizon.
+     */
+    public final int getMaxHorizon() {
+        return this.max_horizon;
+    }
+
+    /**
+     * Sets the configurations of the solvers raced on each formula, each on its own thread. The first solver to answer
+     * wins and the others are stopped. A single configuration runs on the calling thread. When the horizons are
+     * scheduled concurrently, each horizon already has its own thread and the portfolio must hold a single
+     * configuration, which builds the solver of every horizon.
+     *
+     * @param portfolio the solver configurations, at least one when the planner is run.
+     */
+    @CommandLine.Option(names = {"-P", "--portfolio"}, defaultValue = "DEFAULT", split = ",",
+            paramLabel = "<configuration>",
+            description = "Set the solvers raced on each formula: DEFAULT, GLUCOSE, MINI_LEARNING_HEAP, LUBY_RESTARTS, "
+                    + "BIERE_RESTARTS, RANDOM_WALK or GOAL_DIRECTED, separated by commas (preset DEFAULT).")
+    public final void setPortfolio(final List<SolverConfiguration> portfolio) {
+        // Picocli first sets a multi-value option to an empty list, then sets it again once the values are parsed, so
+        // an empty portfolio is only rejected when the configuration is checked.
+        this.portfolio = new ArrayList<>(portfolio);
+    }
+
+    /**
+     * Returns the configurations of the solvers raced on each formula.
+     *
+     * @return the solver configurations.
+     */
+    public final List<SolverConfiguration> getPortfolio() {
+        return Collections.unmodifiableList(this.portfolio);
+    }
+
+    /**
+     * Sets the number of variables each formula is split over when the horizons are searched one at a time. A formula
+     * that a solver cannot answer after a short probe is split into 2^depth cubes over the most active actions of its
+     * middle steps, which are solved by as many solvers as threads, their configurations cycling through the
+     * portfolio, or one after the other by a single solver with a single thread. The formula is satisfiable as soon as
+     * a cube is, and unsatisfiable once every cube is refuted. The probe and the cubes share the budget of the horizon.
+     *
+     * @param cube_depth the number of variables to split over, or 0 to never split the formulae.
+     */
+    @CommandLine.Option(names = {"-D", "--cube-depth"}, defaultValue = "0", paramLabel = "<integer>",
+            description = "Set the number of actions each hard formula is split over, giving 2^depth cubes solved "
+                    + "by all the threads, between 0 and 16 (preset 0, no splitting).")
+    public final void setCubeDepth(final int cube_depth) {
+        if (cube_depth < 0 || cube_depth > 16) {
+            throw new IllegalArgumentException("The cube depth must be between 0 and 16");
+        }
+        this.cube_depth = cube_depth;
+    }
+
+    /**
+     * Returns the number of variables each formula is split over.
+     *
+     * @return the number of variables to split over, or 0 if the formulae are never split.
+     */
+    public final int getCubeDepth() {
+        return this.cube_depth;
+    }
+
+    /**
+     * Sets whether the plan found is printed step by step, with the state reached at each step and the preconditions
+     * and effects of each action. Otherwise, only the size of the plan is printed.
+     *
+     * @param verbose whether the plan is printed step by step.
+     */
+    @CommandLine.Option(names = {"-v", "--verbose"}, defaultValue = "false", arity = "1", paramLabel = "<boolean>",
+            description = "Print the plan found step by step (preset false).")
+    public final void setVerbose(final boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Returns whether the plan found is printed step by step.
+     *
+     * @return whether the plan is printed step by step.
+     */
+    public final boolean isVerbose() {
+        return this.verbose;
+    }
+
+    /**
+     * Sets the file the measures of each horizon are written to after each search: JSON if its name ends with .json,
+     * CSV otherwise. The measures are also committed as JDK Flight Recorder events whenever a recording is running.
+     *
+     * @param metrics_file the path of the file, or null.
+     */
+    @CommandLine.Option(names = {"-M", "--metrics"}, paramLabel = "<file>",
+            description = "Write the measures of each horizon to a JSON or CSV file (preset none).")
+    public final void setMetricsFile(final String metrics_file) {
+        this.metrics_file = metrics_file;
+    }
+
+    /**
+     * Returns the file the measures of each horizon are written to.
+     *
+     * @return the path of the file, or null if they are not written.
+     */
+    public final String getMetricsFile() {
+        return this.metrics_file;
+    }
+
+    /**
+     * Sets the directory where the compiled problems and the templates of their transitions are cached, keyed by the
+     * contents of the domain and problem files, so that solving the same problem again skips its instantiation.
+     *
+     * @param cache_directory the path of the directory, or null.
+     */
+    @CommandLine.Option(names = {"-C", "--cache"}, paramLabel = "<directory>",
+            description = "Cache the compiled problems in a directory (preset none).")
+    public final void setCacheDirectory(final String cache_directory) {
+        this.cache_directory = cache_directory;
+    }
+
+    /**
+     * Returns the directory where the compiled problems are cached.
+     *
+     * @return the path of the directory, or null if nothing is cached.
+     */
+    public final String getCacheDirectory() {
+        return this.cache_directory;
+    }
+
+    /**
+     * Sets the size the cache of compiled problems must fit in. The least recently used problems are evicted first.
+     *
+     * @param cache_limit the size in megabytes.
+     */
+    @CommandLine.Option(names = {"-L", "--cache-limit"}, defaultValue = "256", paramLabel = "<megabytes>",
+            description = "Set the size of the cache of compiled problems (preset 256).")
+    public final void setCacheLimit(final int cache_limit) {
+        if (cache_limit < 1) {
+            throw new IllegalArgumentException("The cache limit must be at least 1 megabyte");
+        }
+        this.cache_limit = cache_limit;
+    }
+
+    /**
+     * Returns the size the cache of compiled problems must fit in.
+     *
+     * @return the size in megabytes.
+     */
+    public final int getCacheLimit() {
+        return this.cache_limit;
+    }
+
+    /**
+     * Sets the stream the progress of the search and the plan found are printed to, so that several planners can run
+     * in the same JVM without mixing their output.
+     *
+     * @param output the stream to print to.
+     */
+    public final void setOutput(final PrintStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Returns the stream the progress of the search and the plan found are printed to.
+     *
+     * @return the stream to print to.
+     */
+    public final PrintStream getOutput() {
+        return this.output;
+    }
+
+    /**
+     * Sets whether the heap usage of the process is part of the measures of each horizon. It should not be when
+     * several planners run in the same JVM, since their searches share the heap.
+     *
+     * @param heap_measured whether the heap usage is measured.
+     */
+    public final void setHeapMeasured(final boolean heap_measured) {
+        this.heap_measured = heap_measured;
+    }
+
+    /**
+     * Returns whether the heap usage of the process is part of the measures of each horizon.
+     *
+     * @return whether the heap usage is measured.
+     */
+    public final boolean isHeapMeasured() {
+        return this.heap_measured;
+    }
+
+    /**
+     * Returns the measures of the horizons tried by the last search, in the order they were tried. The horizons solved
+     * concurrently are in the order of their length.
+     *
+     * @return the measures of the horizons.
+     */
+    public final List<HorizonMetrics> getMetrics() {
+        return Collections.unmodifiableList(this.metrics);
+    }
+
     /**
      * Instantiates the planning problem from a parsed problem.
      *
@@ -58,329 +687,718 @@ public class SAT4JPlanner extends AbstractPlanner {
     }
 
     /**
-     * Search a solution plan to a specified domain and problem using A*.
+     * Search a solution plan to the domain and problem set in the configuration. If a cache directory was set, the
+     * compiled problem and the template of its transitions are read from the cache when they were stored by an earlier
+     * search on the same files, so that the problem is neither parsed nor instantiated. Otherwise, the problem is
+     * parsed and instantiated as the planners do, and its encoding is stored once the problem is compiled. Both ways
+     * record the same statistics and log the plan found the same way.
+     *
+     * @return the plan found or null if no plan was found.
+     * @throws InvalidConfigurationException if the planner is not properly configured.
+     */
+    @Override
+    public Plan solve() throws InvalidConfigurationException {
+        if (!this.hasValidConfiguration()) {
+            this.throwInvalidConfigurationException();
+        }
+        final long begin = System.currentTimeMillis();
+        try {
+            EncodingCache.Entry entry = this.load_entry();
+            if (entry != null) {
+                LOGGER.info("The encoding of the problem was read from the cache.");
+                Plan plan = this.solve(entry, begin);
+                this.report(plan, SAT4JPlanner::print_plan);
+                return plan;
+            }
+            Problem problem = this.parse_and_instantiate(begin);
+            if (problem == null) {
+                return null;
+            }
+            Plan plan = this.solve(problem);
+            this.report(plan, problem::toString);
+            return plan;
+        } finally {
+            this.cache = null;
+            this.cache_key = null;
+        }
+    }
+
+    /**
+     * Opens the cache of compiled problems, if a cache directory was set, and reads the entry of the problem.
+     *
+     * @return the entry of the problem, or null if it is not in the cache or nothing is cached.
+     */
+    private EncodingCache.Entry load_entry() {
+        if (this.cache_directory == null) {
+            return null;
+        }
+        try {
+            this.cache = new EncodingCache(Paths.get(this.cache_directory), this.cache_limit * 1024L * 1024L);
+            this.cache_key = this.cache.key(this.getDomainFile(), this.getProblemFile(), this.at_most_one,
+                    this.semantics, this.reachability_pruning, this.invariants, this.state_encoding,
+                    this.lazy);
+            return this.cache.load(this.cache_key);
+        } catch (IOException e) {
+            LOGGER.error("The cache could not be used: {}", e.getMessage());
+            this.cache = null;
+            return null;
+        }
+    }
+
+    /**
+     * Parses and instantiates the problem set in the configuration, recording the time spent and the size of the
+     * problem as the planners do.
+     *
+     * @param begin the time the search started, as given by System.currentTimeMillis().
+     * @return the instantiated problem, or null if the files could not be parsed.
+     */
+    private Problem parse_and_instantiate(long begin) {
+        DefaultParsedProblem parsed = null;
+        try {
+            parsed = this.parse();
+        } catch (IOException e) {
+            LOGGER.fatal(e.getMessage());
+        }
+        Statistics statistics = this.getStatistics();
+        statistics.setTimeToParse(System.currentTimeMillis() - begin);
+        ErrorManager errors = this.getParserErrorManager();
+        for (Message message : errors.getMessages()) {
+            if (message.getType().equals(Message.Type.LEXICAL_ERROR)
+                    || message.getType().equals(Message.Type.PARSER_ERROR)) {
+                LOGGER.fatal(message.toString());
+            } else if (message.getType().equals(Message.Type.PARSER_WARNING)) {
+                LOGGER.warn(message.toString());
+            }
+        }
+        if (parsed == null || !errors.getMessages(Message.Type.LEXICAL_ERROR).isEmpty()
+                || !errors.getMessages(Message.Type.PARSER_ERROR).isEmpty()) {
+            return null;
+        }
+        LOGGER.info("\nparsing domain file \"{}\" done successfully\nparsing problem file \"{}\" done successfully\n",
+                this.getDomainFile().getName(), this.getProblemFile().getName());
+
+        final long instantiation_begin = System.currentTimeMillis();
+        Problem problem = this.instantiate(parsed);
+        statistics.setTimeToEncode(System.currentTimeMillis() - instantiation_begin);
+        statistics.setMemoryUsedForProblemRepresentation(GraphLayout.parseInstance(problem).totalSize());
+        statistics.setNumberOfActions(problem.getActions().size());
+        statistics.setNumberOfRelevantFluents(problem.getFluents().size());
+        LOGGER.info("\nproblem instantiation done successfully ({} actions, {} fluents)\n\n",
+                statistics.getNumberOfActions(), statistics.getNumberOfRelevantFluents());
+        if (!problem.isSolvable()) {
+            LOGGER.info(String.format("goal can be simplified to FALSE. no search will solve it%n%n"));
+        }
+        return problem;
+    }
+
+    /**
+     * Search a solution plan to a problem read from the cache, recording the statistics the planners record for a
+     * parsed problem. The time spent reading the entry is counted as parsing time.
+     *
+     * @param entry the entry of the problem in the cache.
+     * @param begin the time the entry started being read, as given by System.currentTimeMillis().
+     * @return the plan found or null if no plan was found.
+     */
+    private Plan solve(EncodingCache.Entry entry, long begin) {
+        CompiledProblem problem = entry.getProblem();
+        Statistics statistics = this.getStatistics();
+        statistics.setTimeToParse(System.currentTimeMillis() - begin);
+        statistics.setTimeToEncode(0);
+        statistics.setMemoryUsedForProblemRepresentation(GraphLayout.parseInstance(problem).totalSize());
+        statistics.setNumberOfActions(problem.getActionCount());
+        statistics.setNumberOfRelevantFluents(problem.getFluentCount());
+        LOGGER.info("\nproblem read from the cache ({} actions, {} fluents)\n\n", problem.getActionCount(),
+                problem.getFluentCount());
+        return this.search(problem, entry.getTemplate(), entry.getActions(), null);
+    }
+
+    /**
+     * Logs the plan found and the time and memory the search used, as the planners do, whether the problem was parsed
+     * or read from the cache.
+     *
+     * @param plan the plan found, or null if no plan was found.
+     * @param printer the printer of the plan, which knows the names of its actions.
+     */
+    private void report(Plan plan, Function<Plan, String> printer) {
+        if (!LOGGER.isInfoEnabled()) {
+            return;
+        }
+        Statistics statistics = this.getStatistics();
+        StringBuilder text = new StringBuilder();
+        if (plan != null) {
+            text.append(String.format("%nfound plan as follows:%n%n"));
+            text.append(printer.apply(plan));
+        } else {
+            text.append(String.format("%nno plan found%n%n"));
+        }
+        long total_time = statistics.getTimeToParse() + statistics.getTimeToEncode() + statistics.getTimeToSearch();
+        long total_memory = statistics.getMemoryUsedForProblemRepresentation() + statistics.getMemoryUsedToSearch();
+        text.append(String.format("%ntime spent:   %8.2f seconds parsing %n",
+                Statistics.millisecondToSecond(statistics.getTimeToParse())));
+        text.append(String.format("              %8.2f seconds encoding %n",
+                Statistics.millisecondToSecond(statistics.getTimeToEncode())));
+        text.append(String.format("              %8.2f seconds searching%n",
+                Statistics.millisecondToSecond(statistics.getTimeToSearch())));
+        text.append(String.format("              %8.2f seconds total time%n",
+                Statistics.millisecondToSecond(total_time)));
+        text.append(String.format("%nmemory used:  %8.2f MBytes for problem representation%n",
+                Statistics.byteToMByte(statistics.getMemoryUsedForProblemRepresentation())));
+        text.append(String.format("              %8.2f MBytes for searching%n",
+                Statistics.byteToMByte(statistics.getMemoryUsedToSearch())));
+        text.append(String.format("              %8.2f MBytes total%n%n%n", Statistics.byteToMByte(total_memory)));
+        LOGGER.info(text);
+    }
+
+    /**
+     * Search a solution plan to an instantiated problem.
      *
      * @param problem the problem to solve.
      * @return the plan found or null if no plan was found.
      */
     @Override
     public Plan solve(final Problem problem) {
-        List<Fluent> problem_fluents = problem.getFluents();
-        List<Action> problem_actions = problem.getActions();
-        int total_variables_per_step = problem_fluents.size() + problem_actions.size();
+        String[] action_names = null;
+        if (this.cache != null) {
+            action_names = new String[problem.getActions().size()];
+            for (int a = 0; a < action_names.length; a++) {
+                action_names[a] = problem.toShortString(problem.getActions().get(a));
+            }
+        }
+        return this.search(new CompiledProblem(problem), null, problem.getActions(), action_names);
+    }
+
+    /**
+     * Search a solution plan to a compiled problem.
+     *
+     * @param problem the compiled problem to solve.
+     * @param template the template of the transitions read from the cache, or null to build it.
+     * @param actions the actions of the problem, in the order of the compiled problem.
+     * @param action_names the names of the actions if the encoding must be stored in the cache, null otherwise.
+     * @return the plan found or null if no plan was found.
+     */
+    private Plan search(CompiledProblem problem, StepTemplate template, List<Action> actions, String[] action_names) {
+        // The time after which the search gives up, as given by System.nanoTime().
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.getTimeout());
+        final long begin = System.currentTimeMillis();
 
-        for (int search_range = 2; search_range <= 30; search_range++) {    // TODO: change that someday
-            System.out.println("\nAttempting to find a plan of max length " + search_range + "...");
+        ReachabilityAnalysis reachability = null;
 
-            // The content of the CNF file to be sent to SAT4J.
-            StringBuilder cnf_text = new StringBuilder();
+        // The shortest horizon worth searching.
+        int first_horizon = 2;
 
-            // The number of formulae written in the CNF file.
-            int total_formulae = 0;
+        if (this.reachability_pruning) {
+            reachability = new ReachabilityAnalysis(problem);
+            if (reachability.getGoalLayer() == ReachabilityAnalysis.UNREACHABLE) {
+                this.output.println("The goal cannot be reached from the initial state.");
+                return null;
+            }
+            first_horizon = reachability.getGoalLayer();
+        }
+        MutexAnalysis mutexes = null;
+        MutexGroups groups = null;
+        if (this.invariants || this.state_encoding == StateEncoding.MULTI_VALUED) {
+            mutexes = new MutexAnalysis(problem);
+            LOGGER.info("{} fluent mutexes were found.", mutexes.getMutexCount());
+        }
+        if (this.state_encoding == StateEncoding.MULTI_VALUED) {
+            groups = new MutexGroups(problem, mutexes);
+            LOGGER.info("{} groups of fluents were found.", groups.getGroupCount());
+        }
+        PlanningEncoder encoder = new PlanningEncoder(problem, this.at_most_one, this.semantics, reachability,
+                this.invariants ? mutexes : null, groups, this.lazy, template);
+        if (action_names != null) {
+            try {
+                this.cache.store(this.cache_key, encoder, action_names);
+            } catch (IOException e) {
+                LOGGER.error("The encoding could not be stored in the cache: {}", e.getMessage());
+            }
+        }
+        this.metrics.clear();
+        Plan plan;
+        if (this.scheduling != HorizonScheduling.SEQUENTIAL) {
+            plan = this.solve_concurrently(actions, encoder, first_horizon, deadline);
+        } else {
+            HorizonSearch search = new HorizonSearch(this.horizon_strategy, first_horizon, this.max_horizon,
+                    this.horizon_step);
+            plan = this.incremental
+                    ? this.solve_incremental(actions, encoder, search, deadline)
+                    : this.solve_from_scratch(actions, encoder, search, deadline);
+        }
+        if (this.metrics_file != null) {
+            try {
+                HorizonMetrics.write(this.metrics, Paths.get(this.metrics_file));
+            } catch (IOException e) {
+                LOGGER.error("The metrics could not be written to {}: {}", this.metrics_file, e.getMessage());
+            }
+        }
+        this.getStatistics().setTimeToSearch(System.currentTimeMillis() - begin);
+        return plan;
+    }
+
+    /**
+     * Search a solution plan by keeping a single SAT4J portfolio alive over all the horizons. Only the clauses of the
+     * newly added steps are sent to the solver at each horizon, and the goal is given as assumptions on the fluents of
+     * the last step, so that everything the solver learned on the previous horizons is kept. Shorter horizons can be
+     * tried again later on without removing anything, since the steps after the goal can stay empty.
+     *
+     * @param actions the actions of the problem, in the order of the compiled problem.
+     * @param encoder the encoder of the problem.
+     * @param search the horizons to try.
+     * @param deadline the time after which the search gives up, as given by System.nanoTime().
+     * @return the plan found or null if no plan was found.
+     */
+    private Plan solve_incremental(final List<Action> actions, PlanningEncoder encoder, HorizonSearch search,
+                                   long deadline) {
+        SolverPortfolio solver = this.create_portfolio(encoder);
 
-            // The value of the newest variable written in the CNF file ; a fortiori also usable as a total.
-            int index = 0;
+        // The number of steps whose transitions have already been sent to the solver.
+        int encoded_steps = 0;
 
-            // This map links an action with all the values its variable can assume over the entire search.
-            Map<Action, List<Integer>> actions = new HashMap<>();
+        // The shortest satisfiable horizon found so far and its model.
+        int plan_horizon = 0;
+        int[] plan_model = null;
 
-            // Same as the action map, but for fluents. The keys are their position in the fluent list, for convenience.
-            Map<Integer, List<Integer>> fluents = new HashMap<>();
+        // The measures of the horizon being tried.
+        HorizonMetrics metrics = null;
 
-            for (int s = 0; s <= search_range; s++){
-                for (Fluent fluent : problem_fluents) {
-                    index++;
-                    int fluent_value = problem.getFluents().indexOf(fluent) + 1;
-                    fluents.putIfAbsent(fluent_value, new ArrayList<>());
-                    fluents.get(fluent_value).add(index);
-                }
+        try (ClauseSink sink = this.open_sink(solver, encoder, 0)) {
+            try {
+                for (int search_range = search.next(); search_range > 0; search_range = search.next()) {
+                    long budget = this.get_budget(search, deadline);
+                    if (budget <= 0) {
+                        this.output.println("\nThe timeout was reached before horizon " + search_range + ".");
+                        break;
+                    }
+                    this.output.println("\nAttempting to find a plan of max length " + search_range + "...");
 
-                // The last step has no next step to transition to, so there is no need to define actions for it.
-                if (s != search_range) {
-                    for (Action action : problem_actions) {
-                        index++;
-                        actions.putIfAbsent(action, new ArrayList<>());
-                        actions.get(action).add(index);
+                    metrics = new HorizonMetrics(search_range, sink, this.heap_measured);
+                    if (encoded_steps == 0) {
+                        encoder.encodeInitialState(sink);
+                    }
+                    for (; encoded_steps < search_range; encoded_steps++) {
+                        encoder.encodeStep(sink, encoded_steps);
+                    }
+
+                    // The goal is only assumed on the last step, so that the clauses remain valid on other horizons.
+                    IVecInt goal = encoder.getGoalAssumptions(search_range);
+                    metrics.encoded(encoder, sink, solver, encoded_steps, goal.size());
+                    try {
+                        solver.setHorizon(search_range);
+                        boolean satisfiable = this.solve_lazily(solver, sink, encoder, metrics, goal, search_range,
+                                budget);
+                        this.log_winner(solver, search_range);
+                        if (satisfiable) {
+                            this.output.println("Horizon " + search_range + " is satisfiable.");
+                            plan_horizon = search_range;
+                            plan_model = solver.model();
+                        } else {
+                            this.output.println("Horizon " + search_range + " is unsatisfiable.");
+                        }
+                        this.complete(metrics, satisfiable
+                                ? HorizonMetrics.Outcome.SATISFIABLE
+                                : HorizonMetrics.Outcome.UNSATISFIABLE, solver);
+                        search.report(search_range, satisfiable);
+                    } catch (TimeoutException e) {
+                        this.output.println("Horizon " + search_range + " timed out after " + budget + " ms.");
+                        this.complete(metrics, HorizonMetrics.Outcome.TIMEOUT, solver);
+                        search.report(search_range, false);
                     }
                 }
+
+            // Clauses are only ever added to the solver, so a contradiction means that no horizon can be satisfied.
+            } catch (ContradictionException e) {
+                this.output.println("The problem was found to be contradictory at step " + encoded_steps + ".");
+                this.complete(metrics, HorizonMetrics.Outcome.CONTRADICTION, solver);
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.build_plan(actions, encoder, plan_model, plan_horizon);
+    }
+
+    /**
+     * Search a solution plan by rebuilding the whole formula and a new SAT4J portfolio at each horizon.
+     *
+     * @param actions the actions of the problem, in the order of the compiled problem.
+     * @param encoder the encoder of the problem.
+     * @param search the horizons to try.
+     * @param deadline the time after which the search gives up, as given by System.nanoTime().
+     * @return the plan found or null if no plan was found.
+     */
+    private Plan solve_from_scratch(final List<Action> actions, PlanningEncoder encoder, HorizonSearch search,
+                                    long deadline) {
 
-            // Initial state and goal state
+        // The shortest satisfiable horizon found so far and its model.
+        int plan_horizon = 0;
+        int[] plan_model = null;
+
+        for (int search_range = search.next(); search_range > 0; search_range = search.next()) {
+            long budget = this.get_budget(search, deadline);
+            if (budget <= 0) {
+                this.output.println("\nThe timeout was reached before horizon " + search_range + ".");
+                break;
+            }
+            this.output.println("\nAttempting to find a plan of max length " + search_range + "...");
 
-            List<Integer> fluents_init = get_fluents(problem.getInitialState());
-            for (int fluent : fluents.keySet()) {
-                if (fluents_init.contains(fluent)) {
-                    cnf_text.append(fluent);
+            HorizonMetrics metrics = new HorizonMetrics(search_range, null, this.heap_measured);
+            SolverPortfolio solver = this.create_portfolio(encoder);
+            try (ClauseSink sink = this.open_sink(solver, encoder, search_range)) {
+                encoder.encodeInitialState(sink);
+                for (int s = 0; s < search_range; s++) {
+                    encoder.encodeStep(sink, s);
+                }
+                encoder.encodeGoal(sink, search_range);
+                metrics.encoded(encoder, sink, solver, search_range, 0);
+                solver.setHorizon(search_range);
+                boolean satisfiable = this.solve_lazily(solver, sink, encoder, metrics, VecInt.EMPTY,
+                        search_range, budget);
+                this.log_winner(solver, search_range);
+                if (satisfiable) {
+                    this.output.println("Horizon " + search_range + " is satisfiable.");
+                    plan_horizon = search_range;
+                    plan_model = solver.model();
                 } else {
-                    cnf_text.append(-fluent);
+                    this.output.println("Horizon " + search_range + " is unsatisfiable.");
                 }
-                cnf_text.append(" 0\n");
-                total_formulae++;
+                this.complete(metrics, satisfiable
+                        ? HorizonMetrics.Outcome.SATISFIABLE
+                        : HorizonMetrics.Outcome.UNSATISFIABLE, solver);
+                search.report(search_range, satisfiable);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (TimeoutException e) {
+                this.output.println("Horizon " + search_range + " timed out after " + budget + " ms.");
+                this.complete(metrics, HorizonMetrics.Outcome.TIMEOUT, solver);
+                search.report(search_range, false);
+
+            // The formula of a short horizon can be contradictory as soon as it is built, typically when the goal
+            // fluents are fixed to false by the reachability analysis. The search carries on with the next horizon.
+            } catch (ContradictionException e) {
+                this.output.println("The formula of horizon " + search_range + " is contradictory.");
+                this.complete(metrics, HorizonMetrics.Outcome.CONTRADICTION, solver);
+                search.report(search_range, false);
             }
-            for (int fluent : get_fluents(problem.getGoal())) {
-                cnf_text.append(fluent + index - problem_fluents.size());
-                cnf_text.append(" 0\n");
-                total_formulae++;
+        }
+        return this.build_plan(actions, encoder, plan_model, plan_horizon);
+    }
+
+    /**
+     * Search a solution plan by solving a window of horizons at the same time on a pool of threads, each horizon with
+     * its own solver built from the single configuration of the portfolio. The first horizon proven satisfiable gives
+     * the plan. Every formula is rebuilt from scratch, whatever the incremental setting.
+     *
+     * @param actions the actions of the problem, in the order of the compiled problem.
+     * @param encoder the encoder of the problem.
+     * @param first_horizon the shortest horizon worth searching.
+     * @param deadline the time after which the search gives up, as given by System.nanoTime().
+     * @return the plan found or null if no plan was found.
+     */
+    private Plan solve_concurrently(final List<Action> actions, PlanningEncoder encoder, int first_horizon, long deadline) {
+        this.output.println("\nAttempting to find a plan of max length " + first_horizon + " to " + this.max_horizon
+                + " with " + this.horizon_window + " horizons at a time on " + this.threads + " threads...");
+        // The horizons solved at the same time share the heap, and each would reset the peak the others measure.
+        HorizonScheduler scheduler = new HorizonScheduler(encoder, this.portfolio.get(0), this.threads,
+                this.horizon_window, this.scheduling.getRatio(), false, this.output);
+        try {
+            HorizonScheduler.Solution solution = scheduler.solve(first_horizon, this.max_horizon, deadline);
+            this.metrics.addAll(scheduler.getMetrics());
+            if (solution != null) {
+                return this.build_plan(actions, encoder, solution.getModel(), solution.getHorizon());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (System.nanoTime() - deadline >= 0) {
+            this.output.println("The timeout was reached before a plan was found.");
+            return null;
+        }
+        return this.build_plan(actions, encoder, null, 0);
+    }
 
-            // Actions
-
-            for (Action action : actions.keySet()) {
-                for (int step = 0; step < actions.get(action).size(); step++) {
-                    List<Integer> preconditions = get_fluents(action.getPrecondition());
-                    List<Integer> effects = get_fluents(action.getUnconditionalEffect());
-                    List<Integer> components = new ArrayList<>();
-
-                    for (int fluent : fluents.keySet()) {
-
-                        // Using iterators speeds up the loop by removing the fluents that have been accounted for.
-                        Iterator<Integer> iterator_p = preconditions.iterator();
-                        Iterator<Integer> iterator_e = effects.iterator();
-                        while (iterator_p.hasNext()) {
-                            int precondition = iterator_p.next();
-                            if (precondition == fluent) {
-                                components.add(fluents.get(fluent).get(step));
-                                iterator_p.remove();
-                            } else if (precondition == -fluent) {
-                                components.add(-fluents.get(fluent).get(step));
-                                iterator_p.remove();
-                            }
-                        }
-                        while (iterator_e.hasNext()) {
-                            int effect = iterator_e.next();
-                            if (effect == fluent) {
-                                components.add(fluents.get(fluent).get(step + 1));
-                                iterator_e.remove();
-                            } else if (effect == -fluent) {
-                                components.add(-fluents.get(fluent).get(step + 1));
-                                iterator_e.remove();
-                            }
-                        }
+    /**
+     * Solves a formula within a time budget. In lazy mode, each model found is checked against the constraints left out
+     * of the formula, and the formula is solved again with the violated ones until a model satisfies all of them. Each
+     * refinement and the constraints it added are recorded in the measures of the horizon.
+     *
+     * @param solver the portfolio holding the formula.
+     * @param sink the sink of the search, which sends the violated constraints to the portfolio.
+     * @param encoder the encoder of the problem.
+     * @param metrics the measures of the horizon, or null if it is not measured.
+     * @param assumptions the literals assumed to be true, possibly none.
+     * @param search_range the number of steps of the formula.
+     * @param budget the time the whole solving is allowed to take, in milliseconds.
+     * @return whether the formula is satisfiable under the assumptions.
+     * @throws TimeoutException if the budget was spent before the formula was solved.
+     * @throws ContradictionException if the violated constraints made the formula unsatisfiable.
+     */
+    boolean solve_lazily(SolverPortfolio solver, ClauseSink sink, PlanningEncoder encoder, HorizonMetrics metrics,
+                         IVecInt assumptions, int search_range, long budget)
+            throws TimeoutException, ContradictionException {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+        solver.setTimeoutMs(budget);
+        boolean satisfiable = solver.isSatisfiable(assumptions);
+        int refinements = 0;
+        int added = 0;
+        while (satisfiable && this.lazy) {
+            int violated = encoder.refine(sink, encoder.decode(solver.model(), search_range), search_range);
+            if (violated == 0) {
+                break;
+            }
+            refinements++;
+            added += violated;
+            if (metrics != null) {
+                metrics.refined(sink);
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+            if (remaining <= 0) {
+                throw new TimeoutException("The budget was spent refining horizon " + search_range);
+            }
+            solver.setTimeoutMs(remaining);
+            satisfiable = solver.isSatisfiable(assumptions);
+        }
+        if (refinements > 0) {
+            LOGGER.info("{} violated constraints were added to horizon {} over {} refinements.", added,
+                    search_range, refinements);
+        }
+        return satisfiable;
+    }
 
-                        // We end the loop early once all the fluents have been accounted for.
-                        if (preconditions.isEmpty() & effects.isEmpty()) {
-                            break;
-                        }
-                    }
-                    for (int component : components) {
-                        cnf_text.append(-actions.get(action).get(step));
-                        cnf_text.append(" ");
-                        cnf_text.append(component);
-                        cnf_text.append(" 0\n");
-                        total_formulae++;
-                    }
-                }
+    /**
+     * Returns the time the next attempt of a search is allowed to take: the time left before the deadline, shared
+     * evenly between the attempts the search may still make. The time an attempt does not use goes to the next ones.
+     *
+     * @param search the horizons to try.
+     * @param deadline the time after which the search gives up, as given by System.nanoTime().
+     * @return the time of the next attempt in milliseconds, 0 or less if the deadline has passed.
+     */
+    private long get_budget(HorizonSearch search, long deadline) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return remaining <= 0 ? remaining : Math.max(1, remaining / search.getRemainingAttempts());
+    }
 
-            }
+    /**
+     * Builds the plan of the shortest satisfiable horizon a search found, if any.
+     *
+     * @param actions the actions of the problem that was solved.
+     * @param encoder the encoder that described the formula.
+     * @param model the model of the satisfiable horizon, or null if none was found.
+     * @param search_range the satisfiable horizon.
+     * @return the plan found or null if no plan was found.
+     */
+    private Plan build_plan(final List<Action> actions, PlanningEncoder encoder, int[] model, int search_range) {
+        if (model == null) {
+            this.output.println("Could not find a valid plan within the chosen search range.");
+            return null;
+        }
+        return this.extract_plan(actions, encoder, model, search_range);
+    }
 
-            // State transitions
+    /**
+     * Opens the sink the clauses of a search are sent to: the solvers themselves, and a copy in the CNF file if one was
+     * set. Closing the sink closes the portfolio as well.
+     *
+     * @param solver the portfolio receiving the clauses.
+     * @param encoder the encoder of the problem, used to describe the variables in the CNF file.
+     * @param search_range the number of steps of the formula, or 0 if it grows over the search.
+     * @return the sink of the search.
+     * @throws IOException if the CNF file could not be opened.
+     */
+    private ClauseSink open_sink(SolverPortfolio solver, PlanningEncoder encoder, int search_range)
+            throws IOException {
+        if (this.cnf_file == null) {
+            return solver;
+        }
+        return new TeeClauseSink(solver, new DimacsClauseSink(Paths.get(this.cnf_file),
+                "The problem described by this file contains " + encoder.getVariablesPerStep() + " variables per step.",
+                search_range > 0
+                        ? "These variables were described over " + search_range + " steps."
+                        : "These variables were described over all the steps of an incremental search, without goal.",
+                "All variables that are equal with a modulo " + encoder.getVariablesPerStep()
+                        + " represent the same action or fluent at different steps."));
+    }
 
-            for (int fluent : fluents.keySet()) {
-                List<Integer> fluent_values = fluents.get(fluent);
+    /**
+     * Completes the measures of a horizon and keeps them with the measures of the search.
+     *
+     * @param metrics the measures of the horizon.
+     * @param outcome the outcome of the horizon.
+     * @param solver the portfolio that solved the formula.
+     */
+    private void complete(HorizonMetrics metrics, HorizonMetrics.Outcome outcome, SolverPortfolio solver) {
+        if (metrics != null) {
+            metrics.completed(outcome, solver);
+            this.metrics.add(metrics);
+        }
+    }
 
-                // The lists of actions that have the given fluent as a positive/negative effect, respectively.
-                List<Action> transitions_pos = new ArrayList<>();
-                List<Action> transitions_neg = new ArrayList<>();
+    /**
+     * Creates the portfolio solving the formulae of a search, which splits them into cubes if a cube depth is set.
+     *
+     * @param encoder the encoder of the problem.
+     * @return the portfolio.
+     */
+    private SolverPortfolio create_portfolio(PlanningEncoder encoder) {
+        return new SolverPortfolio(this.portfolio, encoder, this.cube_depth, this.threads);
+    }
 
-                for (Action action : actions.keySet()) {
-                    List<Integer> effects = get_fluents(action.getUnconditionalEffect());
-                    if (effects.contains(fluent)) {
-                        transitions_pos.add(action);
-                    }
-                    if (effects.contains(-fluent)) {
-                        transitions_neg.add(action);
-                    }
-                }
-                for (int step = 0; step < fluent_values.size() - 1; step++) {
-                    cnf_text.append(fluent_values.get(step));
-                    cnf_text.append(" ");
-                    cnf_text.append(-fluent_values.get(step + 1));
-                    for (Action transition : transitions_pos) {
-                        cnf_text.append(" ");
-                        cnf_text.append(actions.get(transition).get(step));
-                    }
-                    cnf_text.append(" 0\n");
-                    total_formulae++;
-
-                    cnf_text.append(-fluent_values.get(step));
-                    cnf_text.append(" ");
-                    cnf_text.append(fluent_values.get(step + 1));
-                    for (Action transition : transitions_neg) {
-                        cnf_text.append(" ");
-                        cnf_text.append(actions.get(transition).get(step));
-                    }
-                    cnf_text.append(" 0\n");
-                    total_formulae++;
+    /**
+     * Logs which solver of the portfolio answered on a horizon, so that the portfolio can be tuned for each domain,
+     * and how many cubes the formula was split into.
+     *
+     * @param solver the portfolio that was run.
+     * @param search_range the number of steps of the formula.
+     */
+    private void log_winner(SolverPortfolio solver, int search_range) {
+        if (solver.getCubeCount() > 0) {
+            LOGGER.info("Horizon {} was split into {} cubes, {} of which were refuted.", search_range,
+                    solver.getCubeCount(), solver.getRefutedCubeCount());
+        }
+        if (this.portfolio.size() > 1) {
+            LOGGER.info("The {} solver answered first on horizon {}.", solver.getWinner(), search_range);
+        }
+    }
+
+    /**
+     * Builds the plan described by the model of a satisfiable formula. Under parallel semantics, the actions of a step
+     * are linearized in the order of the action list.
+     *
+     * @param actions the actions of the problem that was solved.
+     * @param encoder the encoder that described the formula.
+     * @param model the model returned by the solver.
+     * @param search_range the number of steps the formula was described over.
+     * @return the plan described by the model.
+     */
+    Plan extract_plan(final List<Action> actions, PlanningEncoder encoder, int[] model, int search_range) {
+        // The value of each variable.
+        boolean[] values = encoder.decode(model, search_range);
+
+        // The plan to be returned by the method.
+        Plan plan = new SequentialPlan();
+
+        // The order indicator for the actions within the plan.
+        int order = 0;
+
+        for (int s = 0; s < search_range; s++) {
+            for (int i = 0; i < actions.size(); i++) {
+                if (values[encoder.action(i, s)]) {
+                    plan.add(order, actions.get(i));
+                    order++;
                 }
             }
+        }
+        if (this.verbose) {
+            this.print_plan(encoder, values, search_range);
+        } else {
+            this.output.println("Plan found with " + plan.size() + " actions over " + search_range + " steps.");
+        }
+        return plan;
+    }
 
-            // Action disjunctions
-
-            for (int s = 0; s < search_range; s++){
-
-                // These specific index ranges correspond to the value ranges used for the actions at step s.
-                // There is obviously no need to make disjunctions between actions that belong to different steps.
-                for (
-                        int index1 = s * total_variables_per_step + fluents.size() + 1;
-                        index1 <= (s + 1) * total_variables_per_step;
-                        index1++
-                ) {
-                    for (
-                            int index2 = s * total_variables_per_step + fluents.size() + 2;
-                            index2 <= (s + 1) * total_variables_per_step;
-                            index2++
-                    ) {
-                        if (index2 > index1) {
-                            cnf_text.append(-index1);
-                            cnf_text.append(" ");
-                            cnf_text.append(-index2);
-                            cnf_text.append(" 0\n");
-                            total_formulae++;
-                        }
-                    }
+    /**
+     * Prints the plan described by the model of a satisfiable formula step by step, with the state reached at each
+     * step and the preconditions and effects of each action.
+     *
+     * @param encoder the encoder that described the formula.
+     * @param values the value of each variable in the model.
+     * @param search_range the number of steps the formula was described over.
+     */
+    private void print_plan(PlanningEncoder encoder, boolean[] values, int search_range) {
+        int fluent_count = encoder.getProblem().getFluentCount();
+        int action_count = encoder.getProblem().getActionCount();
+
+        this.output.println("Plan found! It goes as follows:\n");
+
+        // The printed explanation of the objective of the plan.
+        // A 1 means the predicate associated to the fluent at the given position is true.
+        // A 0 means the predicate is false.
+        // A _ means the predicate doesn't matter.
+        StringBuilder goal = new StringBuilder();
+        append_description(goal, encoder.getProblem().getGoal(), fluent_count);
+        goal.append("(objective)\n\n");
+
+        for (int s = 0; s <= search_range; s++) {
+
+            // The printed explanation of the current state of the predicates.
+            // After each step of the plan, it is compared to the objective for reference (and debugging).
+            StringBuilder state = new StringBuilder();
+            for (int i = 0; i < fluent_count; i++) {
+                if (values[encoder.fluent(i, s)]) {
+                    state.append("1 ");
+                } else {
+                    state.append("0 ");
                 }
             }
+            state.append("(state ");
+            state.append(s);
+            state.append(")");
+            this.output.println(state);
+            this.output.println(goal);
+            if (s != search_range) {
 
-            // Finishing the CNF file, sending it to SAT4J and displaying the results
-
-            StringBuilder header = new StringBuilder();
-            header.append("c The problem described by this file contains ");
-            header.append(total_variables_per_step);
-            header.append(" variables (");
-            header.append(fluents.size());
-            header.append(" fluents, ");
-            header.append(actions.size());
-            header.append(" actions).\n");
-            header.append("c These variables were described over ");
-            header.append(search_range);
-            header.append(" steps in order to find a plan that satisfies all the formulae listed below.\n");
-            header.append("c All variables that are equal with a modulo ");
-            header.append(total_variables_per_step);
-            header.append(" represent the same action or fluent at different steps.\n");
-            header.append("p cnf ");
-            header.append(index);
-            header.append(" ");
-            header.append(total_formulae);
-            header.append("\n");
-            cnf_text.insert(0, header);
+                // The printed explanation of the preconditions and effects of the next actions in the plan.
+                StringBuilder transition = new StringBuilder();
+                boolean is_action = false;
+                for (int i = 0; i < action_count; i++) {
+                    if (values[encoder.action(i, s)]) {
+                        transition.append("Taking action: ");
+                        transition.append(i + 1);
+                        transition.append("\n");
 
-            try {
-                FileWriter writer = new FileWriter("problem.cnf");
-                writer.write(cnf_text.toString());
-                writer.close();
-
-                // The newly-written CNF file is sent to a SAT4J solver for planning.
-                LecteurDimacs solver = new LecteurDimacs(SolverFactory.newDefault());
-                IProblem parsed_problem = solver.parseInstance("problem.cnf");
-                if (parsed_problem.isSatisfiable()) {
-                    System.out.println("Plan found! It goes as follows:\n");
-
-                    // The plan to be returned by the method.
-                    Plan plan = new SequentialPlan();
-
-                    // The order indicator for the actions within the plan.
-                    int order = 0;
-
-                    // The array of all variables specified in the CNF file. The plan is defined by their signs.
-                    int[] model = parsed_problem.model();
-
-                    // The printed explanation of the objective of the plan.
-                    // A 1 means the predicate associated to the fluent at the given position is true.
-                    // A 0 means the predicate is false.
-                    // A _ means the predicate doesn't matter.
-                    StringBuilder goal = new StringBuilder();
-                    List<Integer> goal_fluents = get_fluents(problem.getGoal());
-                    for (int fluent : fluents.keySet()) {
-                        if (goal_fluents.contains(fluent)) {
-                            goal.append("1 ");
-                        } else if (goal_fluents.contains(-fluent)) {
-                            goal.append("0 ");
-                        } else {
-                            goal.append("_ ");
-                        }
-                    }
-                    goal.append("(objective)\n\n");
-
-                    for (int s = 0; s <= search_range; s++) {
-
-                        // The printed explanation of the current state of the predicates.
-                        // After each step of the plan, it is compared to the objective for reference (and debugging).
-                        StringBuilder state = new StringBuilder();
-                        for (int i = 0; i < fluents.size(); i++) {
-                            if (model[s * total_variables_per_step + i] > 0) {
-                                state.append("1 ");
-                            } else {
-                                state.append("0 ");
-                            }
-                        }
-                        state.append("(state ");
-                        state.append(s);
-                        state.append(")");
-                        System.out.println(state);
-                        System.out.println(goal);
-                        if (s != search_range) {
-
-                            // The printed explanation of the preconditions and effects of the next action in the plan.
-                            StringBuilder transition = new StringBuilder();
-                            boolean is_action = false;
-                            transition.append("Taking action: ");
-                            for (int i = 0; i < actions.size(); i++) {
-                                if (model[s * total_variables_per_step + fluents.size() + i] > 0) {
-                                    transition.append(i + 1);
-                                    transition.append("\n");
-
-                                    Action action = problem_actions.get(i);
-                                    plan.add(order, action);
-                                    order++;
-
-                                    List<Integer> preconditions = get_fluents(action.getPrecondition());
-                                    for (int fluent : fluents.keySet()) {
-                                        if (preconditions.contains(fluent)) {
-                                            transition.append("1 ");
-                                        } else if (preconditions.contains(-fluent)) {
-                                            transition.append("0 ");
-                                        } else {
-                                            transition.append("_ ");
-                                        }
-                                    }
-                                    transition.append("(preconditions)\n");
-
-                                    List<Integer> effects = get_fluents(action.getUnconditionalEffect());
-                                    for (int fluent : fluents.keySet()) {
-                                        if (effects.contains(fluent)) {
-                                            transition.append("1 ");
-                                        } else if (effects.contains(-fluent)) {
-                                            transition.append("0 ");
-                                        } else {
-                                            transition.append("_ ");
-                                        }
-                                    }
-                                    transition.append("(effects)\n\n");
-                                    is_action = true;
-                                    break;
-                                }
-                            }
-
-                            // Technically, it is possible for a step to have no action associated (in case the search
-                            // went deeper than what the plan needed, for example). This statement handles those cases.
-                            if (!is_action) {
-                                transition.append("none\n\n");
-                            }
-                            System.out.println(transition);
-                        }
+                        append_description(transition, encoder.getProblem().getPreconditions(i), fluent_count);
+                        transition.append("(preconditions)\n");
+
+                        append_description(transition, encoder.getProblem().getEffects(i), fluent_count);
+                        transition.append("(effects)\n\n");
+                        is_action = true;
                     }
-                    return plan;
                 }
-            } catch (IOException | ParseFormatException | TimeoutException e) {
-                throw new RuntimeException(e);
 
-            // ContradictionExceptions can happen on early values of depth, but we still need the search to carry on.
-            } catch (ContradictionException e) {
-                System.out.print("");
+                // Technically, it is possible for a step to have no action associated (in case the search
+                // went deeper than what the plan needed, for example). This statement handles those cases.
+                if (!is_action) {
+                    transition.append("Taking action: none\n\n");
+                }
+                this.output.println(transition);
             }
         }
-        System.out.println("Could not find a valid plan within the chosen search range.");
-        return null;
+    }
+
+    /**
+     * Checks that the configuration of the planner is valid, including that at least one solver is raced on each
+     * formula, and that the horizons scheduled concurrently are each solved by a single solver.
+     *
+     * @return whether the configuration is valid.
+     */
+    @Override
+    public boolean hasValidConfiguration() {
+        return super.hasValidConfiguration() && !this.portfolio.isEmpty() && !this.is_concurrent_portfolio();
+    }
+
+    /**
+     * Throws the exception explaining why the configuration of the planner is not valid.
+     *
+     * @throws InvalidConfigurationException if the configuration is not valid.
+     */
+    @Override
+    protected void throwInvalidConfigurationException() throws InvalidConfigurationException {
+        super.throwInvalidConfigurationException();
+        if (this.portfolio.isEmpty()) {
+            throw new InvalidConfigurationException("The portfolio must contain at least one solver");
+        }
+        if (this.is_concurrent_portfolio()) {
+            throw new InvalidConfigurationException("The horizons scheduled concurrently are each solved by a single "
+                    + "solver, without portfolio or cube depth");
+        }
+    }
+
+    /**
+     * Returns whether the horizons are scheduled concurrently while several solvers would solve each formula.
+     *
+     * @return whether the scheduling conflicts with the portfolio or the cube depth.
+     */
+    private boolean is_concurrent_portfolio() {
+        return this.scheduling != HorizonScheduling.SEQUENTIAL && (this.portfolio.size() > 1 || this.cube_depth > 0);
     }
 
     /**
@@ -391,7 +1409,7 @@ public class SAT4JPlanner extends AbstractPlanner {
      */
     @Override
     public boolean isSupported(Problem problem) {
-        System.out.println("That one method was used somewhere at some point.");
+        this.output.println("That one method was used somewhere at some point.");
         return true;
     }
 
@@ -410,16 +1428,46 @@ public class SAT4JPlanner extends AbstractPlanner {
         }
     }
 
-    private List<Integer> get_fluents(AbstractFluentDescription description) {
-        List<Integer> fluents = new ArrayList<>();
-        BitSet fluents_pos = description.getPositiveFluents();
-        for(int i = fluents_pos.nextSetBit(0); i >= 0; i = fluents_pos.nextSetBit(i + 1)) {
-            fluents.add(i + 1);
+    /**
+     * Prints a plan in the layout the PDDL4J problems print plans in: the time of each action, its name and its
+     * duration, which is 0 since the actions are not durative, the names being aligned on the right.
+     *
+     * @param plan the plan to print.
+     * @return the printed plan.
+     */
+    private static String print_plan(Plan plan) {
+        StringBuilder text = new StringBuilder();
+        int name_width = 0;
+        for (Action action : plan.actions()) {
+            name_width = Math.max(name_width, action.getName().length());
+        }
+        int time_width = (int) Math.log10(plan.timeSpecifiers().size()) + 1;
+        String format = "%0" + time_width + "d: (%" + name_width + "s) [0]%n";
+        for (int time : plan.timeSpecifiers()) {
+            for (Action action : plan.getActionSet(time)) {
+                text.append(String.format(format, time, action.getName()));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Appends the printed explanation of a precondition, effect or goal: a 1 for each fluent that must be true, a 0 for
+     * each fluent that must be false and a _ for each fluent that doesn't matter.
+     *
+     * @param text the text to append to.
+     * @param description the signed positions of the fluents of the description, starting at 1.
+     * @param fluent_count the number of fluents of the problem.
+     */
+    private static void append_description(StringBuilder text, int[] description, int fluent_count) {
+        char[] row = new char[fluent_count * 2];
+        for (int i = 0; i < fluent_count; i++) {
+            row[2 * i] = '_';
+            row[2 * i + 1] = ' ';
         }
-        BitSet fluents_neg = description.getNegativeFluents();
-        for(int i = fluents_neg.nextSetBit(0); i >= 0; i = fluents_neg.nextSetBit(i + 1)) {
-            fluents.add(-i - 1);
+        for (int fluent : description) {
+            row[2 * (Math.abs(fluent) - 1)] = fluent > 0 ? '1' : '0';
         }
-        return fluents;
+        text.append(row);
     }
 }
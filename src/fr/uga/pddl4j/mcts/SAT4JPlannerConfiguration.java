@@ -4,6 +4,7 @@ import fr.uga.pddl4j.planners.InvalidConfigurationException;
 import fr.uga.pddl4j.planners.LogLevel;
 
 import java.io.File;
+import java.util.Arrays;
 
 public class SAT4JPlannerConfiguration {
 
@@ -28,6 +29,32 @@ public class SAT4JPlannerConfiguration {
         planner.setTimeout(1000);
         // Sets log level
         planner.setLogLevel(LogLevel.INFO);
+        // Prints the plan found step by step
+        planner.setVerbose(true);
+        // Keeps a single solver alive over all the horizons
+        planner.setIncremental(true);
+        // Selects the encoding of the action disjunctions
+        planner.setAtMostOneEncoding(AtMostOneEncoding.COMMANDER);
+        // Lets non-interfering actions share a step
+        planner.setStepSemantics(StepSemantics.EXISTS_STEP);
+        // Prunes the formulae with a relaxed planning graph
+        planner.setReachabilityPruning(true);
+        // Adds the fluent mutexes to every step
+        planner.setInvariants(true);
+        // Describes each fluent as its own variable, rather than grouping the fluents into multi-valued variables
+        planner.setStateEncoding(StateEncoding.BOOLEAN);
+        // Adds every constraint up front, rather than only the ones violated by the models found
+        planner.setLazy(false);
+        // Doubles the horizon until a plan is found, then searches for the shortest plan
+        planner.setHorizonStrategy(HorizonStrategy.EXPONENTIAL_BINARY);
+        planner.setMaxHorizon(30);
+        // Solves the horizons one at a time, in the order of the strategy
+        planner.setHorizonScheduling(HorizonScheduling.SEQUENTIAL);
+        // Races differently configured solvers on each formula
+        planner.setPortfolio(Arrays.asList(SolverConfiguration.DEFAULT, SolverConfiguration.GLUCOSE,
+                SolverConfiguration.LUBY_RESTARTS));
+        // Splits no formula into cubes, the threads being used by the solvers of the portfolio
+        planner.setCubeDepth(0);
         // Selects the heuristic to use
 //        planner.setHeuristic(StateHeuristic.Name.MAX);
         // Sets the weight of the heuristic
@@ -0,0 +1,57 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * This sink sends every clause straight to a SAT4J solver.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class SolverClauseSink extends CountingClauseSink {
+
+    /**
+     * The solver receiving the clauses.
+     */
+    private final ISolver solver;
+
+    /**
+     * Creates a sink for the given solver.
+     *
+     * @param solver the solver receiving the clauses.
+     */
+    public SolverClauseSink(ISolver solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Returns the solver receiving the clauses.
+     *
+     * @return the solver of the sink.
+     */
+    public ISolver getSolver() {
+        return this.solver;
+    }
+
+    @Override
+    public void addVariables(int count) {
+        if (count > this.getVariableCount()) {
+            this.solver.newVar(count);
+        }
+        super.addVariables(count);
+    }
+
+    @Override
+    public void addClause(IVecInt literals) throws ContradictionException {
+        this.count(literals);
+        this.solver.addClause(literals);
+    }
+
+    @Override
+    public void addAtMost(IVecInt literals, int degree) throws ContradictionException {
+        this.count(literals);
+        this.solver.addAtMost(literals, degree);
+    }
+}
@@ -0,0 +1,118 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.minisat.core.Solver;
+import org.sat4j.minisat.orders.RSATPhaseSelectionStrategy;
+import org.sat4j.minisat.orders.RandomWalkDecorator;
+import org.sat4j.minisat.orders.VarOrderHeap;
+import org.sat4j.specs.ISolver;
+
+/**
+ * This enumeration lists the SAT4J solver configurations the planner can race against each other. They differ by their
+ * learning, restart and branching strategies, which is what makes one of them much faster than the others on a given
+ * formula.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum SolverConfiguration {
+
+    /**
+     * The default SAT4J solver.
+     */
+    DEFAULT {
+        @Override
+        public ISolver create() {
+            return SolverFactory.newDefault();
+        }
+    },
+
+    /**
+     * The solver using the learned clause deletion strategy of Glucose, based on the number of decision levels of each
+     * learned clause.
+     */
+    GLUCOSE {
+        @Override
+        public ISolver create() {
+            return SolverFactory.newGlucose();
+        }
+    },
+
+    /**
+     * The plain MiniSAT-like solver, with a heap of variable activities and the MiniSAT restarts.
+     */
+    MINI_LEARNING_HEAP {
+        @Override
+        public ISolver create() {
+            return SolverFactory.newMiniLearningHeap();
+        }
+    },
+
+    /**
+     * The solver using the RSAT phase saving and the Luby restart sequence.
+     */
+    LUBY_RESTARTS {
+        @Override
+        public ISolver create() {
+            return SolverFactory.newMiniLearningHeapRsatExpSimpLuby();
+        }
+    },
+
+    /**
+     * The solver using the RSAT phase saving and the inner/outer restart sequence of A. Biere.
+     */
+    BIERE_RESTARTS {
+        @Override
+        public ISolver create() {
+            return SolverFactory.newMiniLearningHeapRsatExpSimpBiere();
+        }
+    },
+
+    /**
+     * The solver using the RSAT phase saving, where 2% of the decisions are taken on random variables.
+     */
+    RANDOM_WALK {
+        @Override
+        public ISolver create() {
+            Solver solver = SolverFactory.newMiniLearningHeapRsatExpSimp();
+            solver.setOrder(new RandomWalkDecorator(new VarOrderHeap(new RSATPhaseSelectionStrategy()), 0.02));
+            return solver;
+        }
+    },
+
+    /**
+     * The solver using the RSAT phase saving, which branches first on the actions supporting the open goals, backwards
+     * from the last step, as in {@link PlanningOrder}. Without an encoder, it only uses the activity-based order.
+     */
+    GOAL_DIRECTED {
+        @Override
+        public ISolver create() {
+            return SolverFactory.newMiniLearningHeapRsatExpSimp();
+        }
+
+        @Override
+        public ISolver create(PlanningEncoder encoder) {
+            Solver solver = SolverFactory.newMiniLearningHeapRsatExpSimp();
+            solver.setOrder(new PlanningOrder(encoder));
+            return solver;
+        }
+    };
+
+    /**
+     * Creates a new solver with this configuration.
+     *
+     * @return the solver.
+     */
+    public abstract ISolver create();
+
+    /**
+     * Creates a new solver with this configuration for the formulae of an encoder, so that the configurations that
+     * know the layout of the variables can use it.
+     *
+     * @param encoder the encoder of the formulae the solver will receive.
+     * @return the solver.
+     */
+    public ISolver create(PlanningEncoder encoder) {
+        return this.create();
+    }
+}
@@ -0,0 +1,611 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.core.ILits;
+import org.sat4j.minisat.core.IOrder;
+import org.sat4j.minisat.core.Solver;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This sink sends every clause to several differently configured SAT4J solvers, and races them on the same formula,
+ * each on its own thread. The first solver to answer wins, and the others are stopped before the call returns, so that
+ * clauses can be added to all of them again for the next horizon. They are stopped by clearing the flag their own
+ * timer clears at their timeout, which is safe whether or not they are still running, unlike
+ * {@link ISolver#expireTimeout()} that also releases the timer a finishing solver is releasing. With a single
+ * configuration, the solver simply runs on the calling thread.
+ * <p>
+ * The portfolio can also split each formula into cubes and conquer them, so that a single hard formula keeps every
+ * thread busy. One solver first probes the formula for a few conflicts, which answers the easy formulae and ranks the
+ * variables by activity. The most active actions of the middle steps of the plan are then chosen, and each of the
+ * cubes fixing them one way or the other is solved as assumptions by the next idle solver, or one after the other when
+ * there is a single solver. The formula is satisfiable as soon as one cube is, and unsatisfiable only once every cube
+ * has been refuted. The probe and all the cubes fit in the timeout of the call.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class SolverPortfolio extends CountingClauseSink {
+
+    /**
+     * The flag a SAT4J solver searches under, cleared by its own timer when its timeout is reached.
+     */
+    private static final Field UNDER_TIMEOUT = get_under_timeout();
+
+    /**
+     * The configurations of the solvers, in the same order as the solvers.
+     */
+    private final List<SolverConfiguration> configurations;
+
+    /**
+     * The solvers of the portfolio.
+     */
+    private final List<ISolver> solvers = new ArrayList<>();
+
+    /**
+     * The threads running the solvers, or null if there is a single solver.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * The number of conflicts of the probe run before the formula is split into cubes.
+     */
+    private static final int PROBE_CONFLICTS = 2000;
+
+    /**
+     * The number of conflicts of each round of the probe, the deadline of the call being checked between rounds.
+     */
+    private static final int PROBE_ROUND_CONFLICTS = 200;
+
+    /**
+     * The number of variables each formula is split over, or 0 to race the solvers on the whole formula.
+     */
+    private final int cube_depth;
+
+    /**
+     * The encoder of the formulae, or null if it is not known.
+     */
+    private final PlanningEncoder encoder;
+
+    /**
+     * The number of steps of the formula of the next calls, or 0 if it is not known.
+     */
+    private int horizon = 0;
+
+    /**
+     * The time every solver is allowed to spend on each call, in milliseconds.
+     */
+    private long timeout = Long.MAX_VALUE;
+
+    /**
+     * The position of the solver that answered the last call, or -1 if none did.
+     */
+    private int winner = -1;
+
+    /**
+     * The number of cubes the last call was split into, or 0 if it was not split.
+     */
+    private int cube_count = 0;
+
+    /**
+     * The number of cubes of the last call that were refuted.
+     */
+    private final AtomicInteger refuted_cubes = new AtomicInteger();
+
+    /**
+     * Creates a portfolio with one solver for each of the given configurations.
+     *
+     * @param configurations the configurations of the solvers.
+     */
+    public SolverPortfolio(List<SolverConfiguration> configurations) {
+        this(configurations, null);
+    }
+
+    /**
+     * Creates a portfolio with one solver for each of the given configurations, for the formulae of an encoder.
+     *
+     * @param configurations the configurations of the solvers.
+     * @param encoder the encoder of the formulae the solvers will receive, or null if it is not known.
+     */
+    public SolverPortfolio(List<SolverConfiguration> configurations, PlanningEncoder encoder) {
+        this(configurations, encoder, 0, configurations.size());
+    }
+
+    /**
+     * Creates a portfolio for the formulae of an encoder, which either races one solver for each configuration, or
+     * splits each formula into cubes solved by a pool of solvers whose configurations cycle through the given ones.
+     *
+     * @param configurations the configurations of the solvers.
+     * @param encoder the encoder of the formulae the solvers will receive, or null if it is not known.
+     * @param cube_depth the number of variables each formula is split over, or 0 to race the solvers.
+     * @param solver_count the number of solvers conquering the cubes, ignored if the formulae are not split.
+     */
+    public SolverPortfolio(List<SolverConfiguration> configurations, PlanningEncoder encoder, int cube_depth,
+                           int solver_count) {
+        if (configurations.isEmpty()) {
+            throw new IllegalArgumentException("The portfolio must contain at least one solver");
+        }
+        if (cube_depth < 0 || cube_depth > 16) {
+            throw new IllegalArgumentException("The cube depth must be between 0 and 16");
+        }
+        if (cube_depth > 0 && encoder == null) {
+            throw new IllegalArgumentException("The formulae can only be split with their encoder");
+        }
+        this.cube_depth = cube_depth;
+        this.encoder = encoder;
+        if (cube_depth == 0) {
+            this.configurations = new ArrayList<>(configurations);
+        } else {
+            this.configurations = new ArrayList<>();
+            for (int i = 0; i < solver_count; i++) {
+                this.configurations.add(configurations.get(i % configurations.size()));
+            }
+        }
+        for (SolverConfiguration configuration : this.configurations) {
+            this.solvers.add(encoder == null ? configuration.create() : configuration.create(encoder));
+        }
+        this.pool = this.solvers.size() == 1 ? null : Executors.newFixedThreadPool(this.solvers.size(), task -> {
+            Thread thread = new Thread(task, "portfolio-solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void addVariables(int count) {
+        if (count > this.getVariableCount()) {
+            for (ISolver solver : this.solvers) {
+                solver.newVar(count);
+            }
+        }
+        super.addVariables(count);
+    }
+
+    @Override
+    public void addClause(IVecInt literals) throws ContradictionException {
+        this.count(literals);
+        for (ISolver solver : this.solvers) {
+            solver.addClause(literals);
+        }
+    }
+
+    @Override
+    public void addAtMost(IVecInt literals, int degree) throws ContradictionException {
+        this.count(literals);
+        for (ISolver solver : this.solvers) {
+            solver.addAtMost(literals, degree);
+        }
+    }
+
+    /**
+     * Sets the time every solver is allowed to spend on each of the next calls.
+     *
+     * @param timeout the timeout in milliseconds.
+     */
+    public void setTimeoutMs(long timeout) {
+        this.timeout = timeout;
+        for (ISolver solver : this.solvers) {
+            solver.setTimeoutMs(timeout);
+        }
+    }
+
+    /**
+     * Tells the solvers that follow the layout of the formula which step the goal of the next calls is at.
+     *
+     * @param horizon the number of steps of the formula.
+     */
+    public void setHorizon(int horizon) {
+        this.horizon = horizon;
+        for (ISolver solver : this.solvers) {
+            if (solver instanceof Solver && ((Solver) solver).getOrder() instanceof PlanningOrder) {
+                ((PlanningOrder) ((Solver) solver).getOrder()).setHorizon(horizon);
+            }
+        }
+    }
+
+    /**
+     * Races the solvers on the formula under the given assumptions.
+     *
+     * @param assumptions the literals assumed to be true, possibly none.
+     * @return whether the formula is satisfiable under the assumptions.
+     * @throws TimeoutException if every solver reached its timeout.
+     */
+    public boolean isSatisfiable(IVecInt assumptions) throws TimeoutException {
+        this.winner = -1;
+        this.cube_count = 0;
+        this.refuted_cubes.set(0);
+        if (this.cube_depth > 0 && this.horizon > 0) {
+            return this.conquer(assumptions);
+        }
+        if (this.pool == null) {
+            boolean satisfiable = this.solvers.get(0).isSatisfiable(assumptions);
+            this.winner = 0;
+            return satisfiable;
+        }
+        CompletionService<Boolean> race = new ExecutorCompletionService<>(this.pool);
+        List<Future<Boolean>> runs = new ArrayList<>();
+        for (ISolver solver : this.solvers) {
+            runs.add(race.submit(() -> solver.isSatisfiable(assumptions)));
+        }
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Future<Boolean> run = race.take();
+                try {
+                    boolean satisfiable = run.get();
+                    this.winner = runs.indexOf(run);
+                    return satisfiable;
+                } catch (ExecutionException e) {
+                    // A solver that failed rather than reaching its timeout fails the whole call.
+                    if (!(e.getCause() instanceof TimeoutException)) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+            throw new TimeoutException("Every solver of the portfolio reached its timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("The portfolio was interrupted");
+        } finally {
+            this.stop(runs);
+        }
+    }
+
+    /**
+     * Probes the formula with the first solver, then splits it into cubes over the most active actions of the middle
+     * steps, and lets every solver take the next cube until one of them is satisfiable or all of them are refuted. With
+     * a single solver, the cubes are solved one after the other on the calling thread. The probe and the cubes share
+     * the time of the call: each cube is only given the time left before the deadline of the call.
+     *
+     * @param assumptions the literals assumed to be true, possibly none.
+     * @return whether the formula is satisfiable under the assumptions.
+     * @throws TimeoutException if a cube could not be refuted before the timeout.
+     */
+    private boolean conquer(IVecInt assumptions) throws TimeoutException {
+        final long start = System.nanoTime();
+        ISolver probe = this.solvers.get(0);
+        // The probe is bounded by conflicts rather than time, so it runs in short rounds between which the deadline is
+        // checked, no other thread ever stopping it.
+        probe.setTimeoutOnConflicts(PROBE_ROUND_CONFLICTS);
+        try {
+            for (int conflicts = 0; conflicts < PROBE_CONFLICTS && this.get_remaining(start) > 0;
+                 conflicts += PROBE_ROUND_CONFLICTS) {
+                try {
+                    boolean satisfiable = probe.isSatisfiable(assumptions);
+                    this.winner = 0;
+                    return satisfiable;
+                } catch (TimeoutException e) {
+                    // The formula is hard enough to be split, unless another round can still answer it.
+                }
+            }
+        } finally {
+            probe.setTimeoutMs(this.timeout);
+        }
+
+        int[] split = this.select_split(probe);
+        long remaining = this.get_remaining(start);
+        if (remaining <= 0) {
+            throw new TimeoutException("The timeout was reached while probing the formula");
+        }
+        if (split.length == 0) {
+            probe.setTimeoutMs(remaining);
+            try {
+                boolean satisfiable = probe.isSatisfiable(assumptions);
+                this.winner = 0;
+                return satisfiable;
+            } finally {
+                probe.setTimeoutMs(this.timeout);
+            }
+        }
+        this.cube_count = 1 << split.length;
+        AtomicInteger next_cube = new AtomicInteger();
+        AtomicBoolean timed_out = new AtomicBoolean();
+        if (this.pool == null) {
+            try {
+                if (this.solve_cubes(probe, assumptions, split, next_cube, timed_out, start)) {
+                    this.winner = 0;
+                    return true;
+                }
+            } finally {
+                probe.setTimeoutMs(this.timeout);
+            }
+            return this.refuted();
+        }
+        CompletionService<Boolean> race = new ExecutorCompletionService<>(this.pool);
+        List<Future<Boolean>> runs = new ArrayList<>();
+        for (ISolver solver : this.solvers) {
+            runs.add(race.submit(() -> this.solve_cubes(solver, assumptions, split, next_cube, timed_out, start)));
+        }
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Future<Boolean> run = race.take();
+                try {
+                    if (run.get()) {
+                        this.winner = runs.indexOf(run);
+                        return true;
+                    }
+                    if (timed_out.get()) {
+                        break;
+                    }
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return this.refuted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("The portfolio was interrupted");
+        } finally {
+            this.stop(runs);
+            for (ISolver solver : this.solvers) {
+                solver.setTimeoutMs(this.timeout);
+            }
+        }
+    }
+
+    /**
+     * Lets a solver take the next cube of a split formula until one of them is satisfiable, every cube was taken, or
+     * the deadline of the call has passed. Each cube is given the time left before the deadline.
+     *
+     * @param solver the solver taking the cubes.
+     * @param assumptions the literals assumed to be true in every cube, possibly none.
+     * @param split the variables the formula is split over.
+     * @param next_cube the index of the next cube to take, shared by the solvers.
+     * @param timed_out whether a solver reached the deadline, shared by the solvers.
+     * @param start the time the call started, as given by System.nanoTime().
+     * @return whether the solver found a satisfiable cube, its model being that of the formula.
+     */
+    private boolean solve_cubes(ISolver solver, IVecInt assumptions, int[] split, AtomicInteger next_cube,
+                                AtomicBoolean timed_out, long start) {
+        VecInt cube = new VecInt(assumptions.size() + split.length);
+        for (int cube_index = next_cube.getAndIncrement(); cube_index < this.cube_count;
+             cube_index = next_cube.getAndIncrement()) {
+            long remaining = this.get_remaining(start);
+            if (timed_out.get() || remaining <= 0) {
+                timed_out.set(true);
+                return false;
+            }
+            cube.clear();
+            assumptions.copyTo(cube);
+            for (int i = 0; i < split.length; i++) {
+                cube.push((cube_index & (1 << i)) == 0 ? split[i] : -split[i]);
+            }
+            solver.setTimeoutMs(remaining);
+            try {
+                if (solver.isSatisfiable(cube)) {
+                    return true;
+                }
+                this.refuted_cubes.incrementAndGet();
+            } catch (TimeoutException e) {
+                timed_out.set(true);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Concludes a split formula for which no cube was found satisfiable.
+     *
+     * @return false, the formula being unsatisfiable, if every cube was refuted.
+     * @throws TimeoutException if some cube could not be refuted before the timeout.
+     */
+    private boolean refuted() throws TimeoutException {
+        if (this.refuted_cubes.get() == this.cube_count) {
+            this.winner = 0;
+            return false;
+        }
+        throw new TimeoutException("A cube could not be refuted before the timeout");
+    }
+
+    /**
+     * Returns the time left to a call before its deadline, set by the timeout of the portfolio.
+     *
+     * @param start the time the call started, as given by System.nanoTime().
+     * @return the time left in milliseconds, 0 or less if the deadline has passed.
+     */
+    private long get_remaining(long start) {
+        return this.timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Chooses the variables to split the formula over: the unassigned actions of the middle half of the steps that the
+     * probe found the most active, the middle step first on equal activity.
+     *
+     * @param probe the solver that probed the formula.
+     * @return the variables, at most as many as the cube depth, possibly none.
+     */
+    private int[] select_split(ISolver probe) {
+        if (!(probe instanceof Solver)) {
+            return new int[0];
+        }
+        IOrder order = ((Solver) probe).getOrder();
+        ILits lits = ((Solver) probe).getVocabulary();
+        int middle = this.horizon / 2;
+        int radius = Math.max(1, this.horizon / 4);
+        List<Integer> candidates = new ArrayList<>();
+        Map<Integer, Double> activities = new HashMap<>();
+        Map<Integer, Integer> distances = new HashMap<>();
+        int action_count = this.encoder.getProblem().getActionCount();
+        for (int step = Math.max(0, middle - radius); step < Math.min(this.horizon, middle + radius); step++) {
+            for (int a = 0; a < action_count; a++) {
+                int variable = this.encoder.action(a, step);
+                int literal = LiteralsUtils.posLit(variable);
+                if (variable > lits.nVars() || !lits.isUnassigned(literal)) {
+                    continue;
+                }
+                candidates.add(variable);
+                activities.put(variable, order.varActivity(literal));
+                distances.put(variable, Math.abs(step - middle));
+            }
+        }
+        candidates.sort(Comparator.comparing((Integer variable) -> -activities.get(variable))
+                .thenComparing(distances::get));
+        int[] split = new int[Math.min(this.cube_depth, candidates.size())];
+        for (int i = 0; i < split.length; i++) {
+            split[i] = candidates.get(i);
+        }
+        return split;
+    }
+
+    /**
+     * Returns the number of cubes the last call was split into.
+     *
+     * @return the number of cubes, or 0 if the last call was not split.
+     */
+    public int getCubeCount() {
+        return this.cube_count;
+    }
+
+    /**
+     * Returns the number of cubes of the last call that were refuted.
+     *
+     * @return the number of refuted cubes.
+     */
+    public int getRefutedCubeCount() {
+        return this.refuted_cubes.get();
+    }
+
+    /**
+     * Returns the model found by the solver that answered the last call.
+     *
+     * @return the model.
+     */
+    public int[] model() {
+        return this.solvers.get(this.winner).model();
+    }
+
+    /**
+     * Returns the configuration of the solver that answered the last call.
+     *
+     * @return the winning configuration, or null if no solver answered.
+     */
+    public SolverConfiguration getWinner() {
+        return this.winner < 0 ? null : this.configurations.get(this.winner);
+    }
+
+    /**
+     * Returns the statistics of the solvers, summed over all the solvers of the portfolio. The statistics of a solver
+     * add up over all its calls.
+     *
+     * @return the statistics, by name.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Number> getStat() {
+        Map<String, Number> statistics = new HashMap<>();
+        for (ISolver solver : this.solvers) {
+            Map<String, Number> solver_statistics = solver.getStat();
+            for (Map.Entry<String, Number> entry : solver_statistics.entrySet()) {
+                Number sum = statistics.get(entry.getKey());
+                statistics.put(entry.getKey(), sum == null
+                        ? entry.getValue().longValue()
+                        : sum.longValue() + entry.getValue().longValue());
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the solvers of the portfolio, in the order of their configurations.
+     *
+     * @return the solvers.
+     */
+    public List<ISolver> getSolvers() {
+        return this.solvers;
+    }
+
+    /**
+     * Stops the solvers still running and waits for them, so that none of them is running when the next clauses are
+     * added. A solver may not have started yet when it is first stopped, so it is stopped again until it returns.
+     * Once they have all returned, a solver that failed rather than answering or reaching its timeout fails the call.
+     *
+     * @param runs the runs of the solvers.
+     * @throws IllegalStateException if a solver failed.
+     */
+    private void stop(List<Future<Boolean>> runs) {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (int i = 0; i < runs.size(); i++) {
+            while (!runs.get(i).isDone()) {
+                halt(this.solvers.get(i));
+                try {
+                    runs.get(i).get(10, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | java.util.concurrent.TimeoutException e) {
+                    // The solver either failed, which is reported below, or is still finishing its current conflict.
+                }
+            }
+            try {
+                runs.get(i).get();
+            } catch (ExecutionException e) {
+                if (failure == null && !(e.getCause() instanceof TimeoutException)) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    /**
+     * Stops a solver the way its own timer does at its timeout, by clearing the flag it searches under. The solver then
+     * throws a TimeoutException at its next conflict or decision, and releases its timer itself. Clearing the flag is
+     * harmless if the solver has already returned, and is undone if it has not started yet.
+     *
+     * @param solver the solver to stop.
+     */
+    private static void halt(ISolver solver) {
+        try {
+            UNDER_TIMEOUT.setBoolean(solver, false);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens the flag SAT4J solvers search under, so that the portfolio can stop them from another thread.
+     *
+     * @return the flag.
+     */
+    private static Field get_under_timeout() {
+        try {
+            Field field = Solver.class.getDeclaredField("undertimeout");
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The SAT4J solvers have no timeout flag", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This enumeration lists the ways the state of each step can be described by the formulae.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum StateEncoding {
+
+    /**
+     * Every fluent is an independent boolean variable, with a frame axiom in each direction at every step.
+     */
+    BOOLEAN,
+
+    /**
+     * The fluents of each group found by {@link MutexGroups}, such as all the places of a crate, form a multi-valued
+     * variable with a one-hot representation: exactly one fluent of the group is true at each step. A value can then
+     * only appear when another one is removed, so the frame axioms stating that a fluent only becomes true through an
+     * action, the deletions implied by the additions and the mutexes within the group are left out of the formulae.
+     */
+    MULTI_VALUED
+}
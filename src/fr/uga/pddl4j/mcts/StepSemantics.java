@@ -0,0 +1,28 @@
+package fr.uga.pddl4j.mcts;
+
+/**
+ * This enumeration lists the ways actions can be taken at the same step of a plan.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public enum StepSemantics {
+
+    /**
+     * At most one action is taken at each step, so the number of steps is the length of the plan.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Any set of actions can be taken at the same step as long as none of them disables another one, by making one of
+     * its preconditions false. Such a step can then be executed in any order.
+     */
+    FORALL_STEP,
+
+    /**
+     * Any set of actions can be taken at the same step as long as none of them disables an action that comes after it
+     * in the action list. Such a step is executed in the order of the action list, which allows more actions per step
+     * than {@link #FORALL_STEP}.
+     */
+    EXISTS_STEP
+}
@@ -0,0 +1,174 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVecInt;
+
+import java.util.Arrays;
+
+/**
+ * This sink records the clauses of the transition from step 0 to step 1, so that the same transition can be sent for
+ * any later step by shifting every variable by the offset of that step. Clauses and cardinality constraints are stored
+ * back to back in flat arrays, and a single vector is reused to send all the constraints of a step.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class StepTemplate extends CountingClauseSink {
+
+    /**
+     * The degree of the constraints that are plain clauses.
+     */
+    private static final int CLAUSE = 0;
+
+    /**
+     * The literals of all the constraints, one after the other.
+     */
+    private int[] literals = new int[1024];
+
+    /**
+     * The position after the last literal of each constraint within the literal array.
+     */
+    private int[] ends = new int[256];
+
+    /**
+     * The degree of each constraint: {@link #CLAUSE} for a clause, or the maximum number of true literals of an
+     * at-most constraint.
+     */
+    private int[] degrees = new int[256];
+
+    /**
+     * The category of each constraint, as the position of the category in its enumeration.
+     */
+    private byte[] categories = new byte[256];
+
+    /**
+     * The number of literals recorded.
+     */
+    private int literal_count = 0;
+
+    /**
+     * Creates an empty template, to be filled by the encoder.
+     */
+    public StepTemplate() {
+    }
+
+    /**
+     * Creates a template from its tables, as read back from an {@link EncodingCache}.
+     *
+     * @param literals the literals of all the constraints, one after the other.
+     * @param ends the position after the last literal of each constraint.
+     * @param degrees the degree of each constraint.
+     * @param categories the category of each constraint.
+     */
+    StepTemplate(int[] literals, int[] ends, int[] degrees, byte[] categories) {
+        this.literals = literals;
+        this.ends = ends;
+        this.degrees = degrees;
+        this.categories = categories;
+        this.literal_count = literals.length;
+        ClauseCategory[] all_categories = ClauseCategory.values();
+        for (byte category : categories) {
+            this.setCategory(all_categories[category]);
+            this.count(VecInt.EMPTY);
+        }
+    }
+
+    @Override
+    public void addClause(IVecInt literals) {
+        this.record(literals, CLAUSE);
+    }
+
+    @Override
+    public void addAtMost(IVecInt literals, int degree) {
+        this.record(literals, degree);
+    }
+
+    /**
+     * Returns the literals of all the constraints, one after the other.
+     *
+     * @return a copy of the recorded literals.
+     */
+    int[] getLiterals() {
+        return Arrays.copyOf(this.literals, this.literal_count);
+    }
+
+    /**
+     * Returns the position after the last literal of each constraint within the literals.
+     *
+     * @return a copy of the ends of the constraints.
+     */
+    int[] getEnds() {
+        return Arrays.copyOf(this.ends, this.getClauseCount());
+    }
+
+    /**
+     * Returns the degree of each constraint: 0 for a clause, or the maximum number of true literals of an at-most
+     * constraint.
+     *
+     * @return a copy of the degrees of the constraints.
+     */
+    int[] getDegrees() {
+        return Arrays.copyOf(this.degrees, this.getClauseCount());
+    }
+
+    /**
+     * Returns the category of each constraint, as the position of the category in its enumeration.
+     *
+     * @return a copy of the categories of the constraints.
+     */
+    byte[] getCategories() {
+        return Arrays.copyOf(this.categories, this.getClauseCount());
+    }
+
+    /**
+     * Sends the recorded constraints to a sink, with every variable shifted by the given offset.
+     *
+     * @param sink the sink receiving the constraints.
+     * @param offset the number added to every variable.
+     * @throws ContradictionException if the sink found the formula to be unsatisfiable.
+     */
+    public void stamp(ClauseSink sink, int offset) throws ContradictionException {
+        IVecInt constraint = new VecInt();
+        ClauseCategory[] all_categories = ClauseCategory.values();
+        int category = -1;
+        int start = 0;
+        for (int c = 0; c < this.getClauseCount(); c++) {
+            if (this.categories[c] != category) {
+                category = this.categories[c];
+                sink.setCategory(all_categories[category]);
+            }
+            constraint.clear();
+            for (int i = start; i < this.ends[c]; i++) {
+                int literal = this.literals[i];
+                constraint.push(literal > 0 ? literal + offset : literal - offset);
+            }
+            if (this.degrees[c] == CLAUSE) {
+                sink.addClause(constraint);
+            } else {
+                sink.addAtMost(constraint, this.degrees[c]);
+            }
+            start = this.ends[c];
+        }
+    }
+
+    private void record(IVecInt literals, int degree) {
+        int c = this.getClauseCount();
+        if (c == this.ends.length) {
+            this.ends = Arrays.copyOf(this.ends, c * 2);
+            this.degrees = Arrays.copyOf(this.degrees, c * 2);
+            this.categories = Arrays.copyOf(this.categories, c * 2);
+        }
+        if (this.literal_count + literals.size() > this.literals.length) {
+            this.literals = Arrays.copyOf(this.literals,
+                    Math.max(this.literals.length * 2, this.literal_count + literals.size()));
+        }
+        for (int i = 0; i < literals.size(); i++) {
+            this.literals[this.literal_count++] = literals.get(i);
+        }
+        this.ends[c] = this.literal_count;
+        this.degrees[c] = degree;
+        this.categories[c] = (byte) this.getCategory().ordinal();
+        this.count(literals);
+    }
+}
@@ -0,0 +1,84 @@
+package fr.uga.pddl4j.mcts;
+
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVecInt;
+
+import java.io.IOException;
+
+/**
+ * This sink forwards every clause to two other sinks, typically a solver and a DIMACS file kept for debugging.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+public class TeeClauseSink implements ClauseSink {
+
+    /**
+     * The sink whose counts are reported by this one.
+     */
+    private final ClauseSink main;
+
+    /**
+     * The sink receiving a copy of the clauses.
+     */
+    private final ClauseSink copy;
+
+    /**
+     * Creates a sink forwarding its clauses to the given sinks.
+     *
+     * @param main the sink whose counts are reported by this one.
+     * @param copy the sink receiving a copy of the clauses.
+     */
+    public TeeClauseSink(ClauseSink main, ClauseSink copy) {
+        this.main = main;
+        this.copy = copy;
+    }
+
+    @Override
+    public void addVariables(int count) {
+        this.main.addVariables(count);
+        this.copy.addVariables(count);
+    }
+
+    @Override
+    public void setCategory(ClauseCategory category) {
+        this.main.setCategory(category);
+        this.copy.setCategory(category);
+    }
+
+    @Override
+    public void addClause(IVecInt literals) throws ContradictionException {
+        this.copy.addClause(literals);
+        this.main.addClause(literals);
+    }
+
+    @Override
+    public void addAtMost(IVecInt literals, int degree) throws ContradictionException {
+        this.copy.addAtMost(literals, degree);
+        this.main.addAtMost(literals, degree);
+    }
+
+    @Override
+    public int getVariableCount() {
+        return this.main.getVariableCount();
+    }
+
+    @Override
+    public int getClauseCount() {
+        return this.main.getClauseCount();
+    }
+
+    @Override
+    public int getClauseCount(ClauseCategory category) {
+        return this.main.getClauseCount(category);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.copy.close();
+        } finally {
+            this.main.close();
+        }
+    }
+}
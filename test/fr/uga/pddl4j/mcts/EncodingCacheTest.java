@@ -0,0 +1,307 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.InvalidConfigurationException;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sat4j.specs.ContradictionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test stores the encoding of p01 in an {@link EncodingCache} and reads it back: the compiled problem, the template
+ * and the actions must come back unchanged, and must describe the same formulae. It also checks that the keys follow
+ * the settings, that a damaged entry is dropped, that the least recently used entry is evicted first, and that a plan
+ * found from the cache replays on the parsed problem. The entries are written to a temporary directory.
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+class EncodingCacheTest {
+
+    /**
+     * The number of steps of the formulae compared.
+     */
+    private static final int STEPS = 10;
+
+    /**
+     * The directory of the cache, deleted after each test.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * The domain file.
+     */
+    private File domain;
+
+    /**
+     * The problem file.
+     */
+    private File problem_file;
+
+    /**
+     * The parsed problem.
+     */
+    private Problem problem;
+
+    /**
+     * The encoder of the problem, as stored in the cache.
+     */
+    private PlanningEncoder encoder;
+
+    /**
+     * The names of the actions of the problem, as stored in the cache.
+     */
+    private String[] action_names;
+
+    /**
+     * Parses and encodes the problem.
+     *
+     * @throws IOException if the problem could not be parsed.
+     */
+    @BeforeEach
+    void encode_problem() throws IOException {
+        String path_resources = new File("").getAbsolutePath() + File.separator + "resources" + File.separator;
+        this.domain = new File(path_resources + "domain.pddl");
+        this.problem_file = new File(path_resources + "p01.pddl");
+        SAT4JPlanner planner = create_planner(this.domain, this.problem_file, null);
+        this.problem = planner.instantiate(planner.parse());
+        CompiledProblem compiled = new CompiledProblem(this.problem);
+        this.encoder = new PlanningEncoder(compiled, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL,
+                new ReachabilityAnalysis(compiled), new MutexAnalysis(compiled));
+        this.action_names = new String[this.problem.getActions().size()];
+        for (int a = 0; a < this.action_names.length; a++) {
+            this.action_names[a] = this.problem.toShortString(this.problem.getActions().get(a));
+        }
+    }
+
+    /**
+     * Checks that the keys are stable and change with each setting the template depends on.
+     *
+     * @throws IOException if the files could not be read.
+     */
+    @Test
+    void keys_follow_settings() throws IOException {
+        EncodingCache cache = new EncodingCache(this.directory, Long.MAX_VALUE);
+        File domain = this.domain;
+        File problem = this.problem_file;
+        String key = cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, true, true,
+                StateEncoding.BOOLEAN, false);
+        assertEquals(key, cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, true,
+                true, StateEncoding.BOOLEAN, false), "the key of the same settings changed");
+        List<String> others = Arrays.asList(
+                cache.key(domain, problem, AtMostOneEncoding.PAIRWISE, StepSemantics.SEQUENTIAL, true, true,
+                        StateEncoding.BOOLEAN, false),
+                cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.EXISTS_STEP, true, true,
+                        StateEncoding.BOOLEAN, false),
+                cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, false, true,
+                        StateEncoding.BOOLEAN, false),
+                cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, true, false,
+                        StateEncoding.BOOLEAN, false),
+                cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, true, true,
+                        StateEncoding.MULTI_VALUED, false),
+                cache.key(domain, problem, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, true, true,
+                        StateEncoding.BOOLEAN, true),
+                cache.key(problem, domain, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL, true, true,
+                        StateEncoding.BOOLEAN, false));
+        for (String other : others) {
+            assertNotEquals(key, other, "two different settings share a key");
+        }
+    }
+
+    /**
+     * Checks that an entry holds the compiled problem, the template and the actions it was stored with, and that an
+     * encoder built from it describes the same formulae.
+     *
+     * @throws IOException if the cache could not be written.
+     * @throws ContradictionException if a formula is contradictory.
+     */
+    @Test
+    void entry_is_read_back_unchanged() throws IOException, ContradictionException {
+        EncodingCache cache = new EncodingCache(this.directory, Long.MAX_VALUE);
+        String key = this.store(cache);
+        EncodingCache.Entry entry = cache.load(key);
+        assertNotNull(entry, "the entry was not read back");
+        CompiledProblem stored = this.encoder.getProblem();
+        CompiledProblem loaded = entry.getProblem();
+        assertEquals(stored.getFluentCount(), loaded.getFluentCount(), "the fluent count changed");
+        assertEquals(stored.getActionCount(), loaded.getActionCount(), "the action count changed");
+        assertArrayEquals(stored.getGoal(), loaded.getGoal(), "the goal changed");
+        for (int f = 0; f < stored.getFluentCount(); f++) {
+            assertEquals(stored.isInitiallyTrue(f), loaded.isInitiallyTrue(f), "the initial state changed");
+        }
+        for (int a = 0; a < stored.getActionCount(); a++) {
+            assertArrayEquals(stored.getPreconditions(a), loaded.getPreconditions(a), "a precondition changed");
+            assertArrayEquals(stored.getEffects(a), loaded.getEffects(a), "an effect changed");
+        }
+        StepTemplate template = entry.getTemplate();
+        StepTemplate original_template = this.encoder.getTemplate();
+        assertArrayEquals(original_template.getLiterals(), template.getLiterals(), "the literals changed");
+        assertArrayEquals(original_template.getEnds(), template.getEnds(), "the clause ends changed");
+        assertArrayEquals(original_template.getDegrees(), template.getDegrees(), "the degrees changed");
+        assertArrayEquals(original_template.getCategories(), template.getCategories(), "the categories changed");
+        assertArrayEquals(this.action_names, entry.getActionNames(), "the action names changed");
+
+        List<Action> actions = entry.getActions();
+        for (int a = 0; a < actions.size(); a++) {
+            Action original = this.problem.getActions().get(a);
+            Action rebuilt = actions.get(a);
+            assertEquals(this.action_names[a], rebuilt.getName(), "an action was renamed");
+            assertTrue(rebuilt.getPrecondition().getPositiveFluents().equals(
+                    original.getPrecondition().getPositiveFluents())
+                    && rebuilt.getPrecondition().getNegativeFluents().equals(
+                    original.getPrecondition().getNegativeFluents()), "an action precondition changed");
+            assertTrue(rebuilt.getUnconditionalEffect().getPositiveFluents().equals(
+                    original.getUnconditionalEffect().getPositiveFluents())
+                    && rebuilt.getUnconditionalEffect().getNegativeFluents().equals(
+                    original.getUnconditionalEffect().getNegativeFluents()), "an action effect changed");
+        }
+
+        PlanningEncoder reloaded = new PlanningEncoder(loaded, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL,
+                new ReachabilityAnalysis(loaded), new MutexAnalysis(loaded), null, false, template);
+        try (SolverPortfolio expected = encode(this.encoder); SolverPortfolio actual = encode(reloaded)) {
+            assertEquals(expected.getVariableCount(), actual.getVariableCount(),
+                    "the formulae have different variables");
+            for (ClauseCategory category : ClauseCategory.values()) {
+                assertEquals(expected.getClauseCount(category), actual.getClauseCount(category),
+                        "the formulae have different " + category + " clauses");
+            }
+        }
+    }
+
+    /**
+     * Checks that an entry whose file was cut short is treated as missing and deleted.
+     *
+     * @throws IOException if the cache could not be written or the file could not be cut.
+     */
+    @Test
+    void damaged_entry_is_dropped() throws IOException {
+        EncodingCache cache = new EncodingCache(this.directory, Long.MAX_VALUE);
+        String key = this.store(cache);
+        Path file = this.directory.resolve(key + ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        assertNull(cache.load(key), "a damaged entry was read");
+        assertFalse(Files.exists(file), "a damaged entry was kept");
+    }
+
+    /**
+     * Checks that storing an entry in a full cache evicts the least recently used one, and keeps the entry just read.
+     *
+     * @throws IOException if the cache could not be written.
+     */
+    @Test
+    void least_recently_used_entry_is_evicted() throws IOException {
+        new EncodingCache(this.directory, Long.MAX_VALUE).store("sizing", this.encoder, this.action_names);
+        long entry_size = Files.size(this.directory.resolve("sizing.bin"));
+        Files.delete(this.directory.resolve("sizing.bin"));
+
+        // Room for two entries: the third one evicts whichever of the first two was read the longest time ago.
+        EncodingCache cache = new EncodingCache(this.directory, 2 * entry_size);
+        cache.store("first", this.encoder, this.action_names);
+        cache.store("second", this.encoder, this.action_names);
+        Files.setLastModifiedTime(this.directory.resolve("first.bin"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(this.directory.resolve("second.bin"), FileTime.fromMillis(2000));
+        assertNotNull(cache.load("first"), "an entry was lost before the cache was full");
+        cache.store("third", this.encoder, this.action_names);
+        assertTrue(Files.exists(this.directory.resolve("first.bin")), "the entry just read was evicted");
+        assertFalse(Files.exists(this.directory.resolve("second.bin")), "the least recently used entry was kept");
+        assertTrue(Files.exists(this.directory.resolve("third.bin")), "the entry just stored was evicted");
+    }
+
+    /**
+     * Checks that a planner finds a valid plan once from the parsed problem and once from the cache.
+     *
+     * @throws IOException if the cache could not be read.
+     * @throws InvalidConfigurationException if the planner is not properly configured.
+     */
+    @Test
+    void cached_plan_replays() throws IOException, InvalidConfigurationException {
+        SAT4JPlanner planner = create_planner(this.domain, this.problem_file, this.directory);
+        PlanReplayTest.replay(this.problem, planner.solve(), "parsed problem");
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory, "*.bin")) {
+            assertTrue(entries.iterator().hasNext(), "the encoding was not stored");
+        }
+        Plan plan = create_planner(this.domain, this.problem_file, this.directory).solve();
+        PlanReplayTest.replay(this.problem, plan, "cached problem");
+    }
+
+    /**
+     * Stores the encoding of the problem in a cache, under the key of the settings it was encoded with.
+     *
+     * @param cache the cache.
+     * @return the key of the entry.
+     * @throws IOException if the cache could not be written.
+     */
+    private String store(EncodingCache cache) throws IOException {
+        String key = cache.key(this.domain, this.problem_file, AtMostOneEncoding.COMMANDER, StepSemantics.SEQUENTIAL,
+                true, true, StateEncoding.BOOLEAN, false);
+        cache.store(key, this.encoder, this.action_names);
+        return key;
+    }
+
+    /**
+     * Creates a quiet planner with a single solver.
+     *
+     * @param domain the domain file.
+     * @param problem the problem file.
+     * @param cache_directory the directory of the cache of the planner, or null if nothing is cached.
+     * @return the planner.
+     */
+    private static SAT4JPlanner create_planner(File domain, File problem, Path cache_directory) {
+        SAT4JPlanner planner = new SAT4JPlanner();
+        planner.setDomain(domain.getPath());
+        planner.setProblem(problem.getPath());
+        planner.setTimeout(120);
+        planner.setLogLevel(LogLevel.ERROR);
+        planner.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        planner.setPortfolio(Collections.singletonList(SolverConfiguration.DEFAULT));
+        if (cache_directory != null) {
+            planner.setCacheDirectory(cache_directory.toString());
+        }
+        return planner;
+    }
+
+    /**
+     * Sends the formula of a fixed number of steps to a single solver.
+     *
+     * @param encoder the encoder of the formula.
+     * @return the solver holding the formula.
+     * @throws ContradictionException if the formula is contradictory.
+     */
+    private static SolverPortfolio encode(PlanningEncoder encoder) throws ContradictionException {
+        SolverPortfolio solver = new SolverPortfolio(Collections.singletonList(SolverConfiguration.DEFAULT));
+        encoder.encodeInitialState(solver);
+        for (int s = 0; s < STEPS; s++) {
+            encoder.encodeStep(solver, s);
+        }
+        encoder.encodeGoal(solver, STEPS);
+        return solver;
+    }
+}
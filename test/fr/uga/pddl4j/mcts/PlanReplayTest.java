@@ -0,0 +1,199 @@
+package fr.uga.pddl4j.mcts;
+
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.State;
+import fr.uga.pddl4j.problem.operator.Action;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This test solves a problem under each encoding option of the planner, and replays every plan found from the initial
+ * state of the PDDL4J problem: each action must be applicable in turn, and the goal must hold at the end. The problem
+ * p02, whose formulae are hard enough to be split, is also solved with cubes under timeouts too short to always find a
+ * plan, where the deadline may stop the probe or the cubes at any time: the planner must then either find a valid plan
+ * or give up, but never fail.
+ * <p>
+ * The problem is p01 of the resources directory, each search being given 120 seconds and required to find a plan.
+ * Another problem and a shorter timeout can be given, under which a search that gives up is not a failure, so that
+ * larger problems can be checked in a bounded time:
+ * <pre>
+ * mvn test -Dtest=PlanReplayTest -Dreplay.problem=p03 -Dreplay.timeout=10
+ * </pre>
+ *
+ * @author E. Descamps
+ * @version 1.0 - 05.12.2023
+ */
+class PlanReplayTest {
+
+    /**
+     * The timeout within which every search must find a plan, in seconds.
+     */
+    private static final int FULL_TIMEOUT = 120;
+
+    /**
+     * The name of the domain file in the resources directory.
+     */
+    private static final String DOMAIN = System.getProperty("replay.domain", "domain");
+
+    /**
+     * The name of the problem file in the resources directory.
+     */
+    private static final String PROBLEM = System.getProperty("replay.problem", "p01");
+
+    /**
+     * The name of the problem file solved with cubes under short timeouts.
+     */
+    private static final String CUBE_PROBLEM = "p02";
+
+    /**
+     * The timeout of each search, in seconds. A search may give up under a timeout shorter than the full one.
+     */
+    private static final int TIMEOUT = Integer.getInteger("replay.timeout", FULL_TIMEOUT);
+
+    /**
+     * Returns the encoding options of the planner, each with its name.
+     *
+     * @return the names of the options and the settings they apply to a planner.
+     */
+    static Stream<Arguments> options() {
+        Map<String, Consumer<SAT4JPlanner>> options = new LinkedHashMap<>();
+        for (AtMostOneEncoding at_most_one : AtMostOneEncoding.values()) {
+            options.put("at-most-one " + at_most_one, planner -> planner.setAtMostOneEncoding(at_most_one));
+        }
+        for (StepSemantics semantics : StepSemantics.values()) {
+            options.put("semantics " + semantics, planner -> planner.setStepSemantics(semantics));
+        }
+        options.put("from scratch", planner -> planner.setIncremental(false));
+        options.put("no reachability pruning", planner -> planner.setReachabilityPruning(false));
+        options.put("no invariants", planner -> planner.setInvariants(false));
+        options.put("multi-valued", planner -> planner.setStateEncoding(StateEncoding.MULTI_VALUED));
+        options.put("multi-valued exists-step", planner -> {
+            planner.setStateEncoding(StateEncoding.MULTI_VALUED);
+            planner.setStepSemantics(StepSemantics.EXISTS_STEP);
+        });
+        options.put("lazy", planner -> planner.setLazy(true));
+        options.put("lazy from scratch", planner -> {
+            planner.setLazy(true);
+            planner.setIncremental(false);
+        });
+        options.put("lazy multi-valued", planner -> {
+            planner.setLazy(true);
+            planner.setStateEncoding(StateEncoding.MULTI_VALUED);
+        });
+        options.put("exponential binary", planner -> planner.setHorizonStrategy(HorizonStrategy.EXPONENTIAL_BINARY));
+        options.put("goal-directed order", planner ->
+                planner.setPortfolio(Collections.singletonList(SolverConfiguration.GOAL_DIRECTED)));
+        options.put("portfolio", planner ->
+                planner.setPortfolio(Arrays.asList(SolverConfiguration.DEFAULT, SolverConfiguration.GLUCOSE)));
+        options.put("cube depth 2", planner -> {
+            planner.setCubeDepth(2);
+            planner.setThreads(2);
+        });
+        options.put("interleaved horizons", planner -> {
+            planner.setHorizonScheduling(HorizonScheduling.INTERLEAVED);
+            planner.setThreads(2);
+        });
+        options.put("lazy geometric horizons", planner -> {
+            planner.setLazy(true);
+            planner.setHorizonScheduling(HorizonScheduling.GEOMETRIC);
+            planner.setThreads(2);
+        });
+        return options.entrySet().stream().map(option -> Arguments.of(option.getKey(), option.getValue()));
+    }
+
+    /**
+     * Checks that the plan found under an encoding option replays on the problem.
+     *
+     * @param label the name of the option.
+     * @param option the settings of the option.
+     * @throws IOException if the problem could not be parsed.
+     */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("options")
+    void replays_plan(String label, Consumer<SAT4JPlanner> option) throws IOException {
+        SAT4JPlanner planner = create_planner(PROBLEM, TIMEOUT);
+        option.accept(planner);
+        Problem problem = planner.instantiate(planner.parse());
+        Plan plan = planner.solve(problem);
+        if (plan != null || TIMEOUT >= FULL_TIMEOUT) {
+            replay(problem, plan, label);
+        }
+    }
+
+    /**
+     * Checks that splitting the formulae into cubes under a short timeout either finds a valid plan or gives up.
+     *
+     * @param threads the number of solvers conquering the cubes.
+     * @param timeout the timeout of the search, in seconds.
+     * @throws IOException if the problem could not be parsed.
+     */
+    @ParameterizedTest(name = "cube depth 3, {0} threads, {1} s")
+    @CsvSource({"1, 1", "2, 1", "1, 2", "2, 2", "1, 3", "2, 3"})
+    void solves_cubes_under_short_timeout(int threads, int timeout) throws IOException {
+        SAT4JPlanner planner = create_planner(CUBE_PROBLEM, timeout);
+        planner.setCubeDepth(3);
+        planner.setThreads(threads);
+        Problem problem = planner.instantiate(planner.parse());
+        Plan plan = planner.solve(problem);
+        if (plan != null) {
+            replay(problem, plan, "cube depth 3, " + threads + " threads, " + timeout + " s");
+        }
+    }
+
+    /**
+     * Creates a quiet planner for a problem of the resources directory.
+     *
+     * @param problem the name of the problem file.
+     * @param timeout the timeout of the search, in seconds.
+     * @return the planner.
+     */
+    private static SAT4JPlanner create_planner(String problem, int timeout) {
+        String path_resources = new File("").getAbsolutePath() + File.separator + "resources" + File.separator;
+        SAT4JPlanner planner = new SAT4JPlanner();
+        planner.setDomain(path_resources + DOMAIN + ".pddl");
+        planner.setProblem(path_resources + problem + ".pddl");
+        planner.setTimeout(timeout);
+        planner.setLogLevel(LogLevel.ERROR);
+        planner.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        return planner;
+    }
+
+    /**
+     * Applies a plan to the initial state of a problem, and checks that each action is applicable and that the goal is
+     * reached.
+     *
+     * @param problem the problem the plan was found for.
+     * @param plan the plan, or null if none was found.
+     * @param label the name of the options the plan was found with.
+     */
+    static void replay(Problem problem, Plan plan, String label) {
+        assertNotNull(plan, label + ": no plan was found");
+        State state = new State(problem.getInitialState());
+        int step = 0;
+        for (Action action : plan.actions()) {
+            assertTrue(action.isApplicable(state), label + ": action " + step + " (" + action.getName()
+                    + ") is not applicable");
+            state.apply(action.getConditionalEffects());
+            step++;
+        }
+        assertTrue(state.satisfy(problem.getGoal()), label + ": the plan does not reach the goal");
+    }
+}